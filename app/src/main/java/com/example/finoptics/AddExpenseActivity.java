@@ -1,41 +1,41 @@
 package com.example.finoptics;
 
-import android.content.SharedPreferences;
+import android.content.Context;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
+import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ProgressBar;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.google.firebase.Timestamp;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QuerySnapshot;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.WriteBatch;
 
 
 import org.json.JSONObject;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Calendar;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import okhttp3.Call;
 import okhttp3.Callback;
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
 import okhttp3.Response;
 
 public class AddExpenseActivity extends AppCompatActivity {
@@ -43,17 +43,67 @@ public class AddExpenseActivity extends AppCompatActivity {
     private EditText etSmartInput;
     private Button btnSave;
     private ProgressBar progressBar;
+    private View cardDetectionPreview;
+    private TextView tvDetectionSummary;
 
     private FirebaseFirestore db;
     private FirebaseAuth mAuth;
 
-    private final Map<String, String> localVendorMap = new HashMap<>();
-    private final Map<String, List<String>> keywordClusters = new HashMap<>();
-
 
 
     private static final String TAG = "FinOptics_Gemini";
 
+    // How long Save waits for the cloud before going with the local answer
+    private static final long CLOUD_BUDGET_MS = 800;
+
+    // Typing pauses before the local layers / the cloud are consulted speculatively
+    private static final long LOCAL_DEBOUNCE_MS = 250;
+    private static final long CLOUD_DEBOUNCE_MS = 900;
+    private static final int MIN_PREFETCH_LENGTH = 3;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Local layers run here so typing never waits on prefs, disk or the model
+    private final ExecutorService speculator = Executors.newSingleThreadExecutor();
+
+    // Timestamp of the expense this screen saved; a late upgrade adjusts that day's rollups
+    private long savedAtMillis;
+
+    /* -------------------- SPECULATION STATE (MAIN THREAD) -------------------- */
+
+    /** A cloud reply, already normalized. */
+    private static final class CloudAnswer {
+        final double amount;
+        final String category;
+
+        CloudAnswer(double amount, String category) {
+            this.amount = amount;
+            this.category = category;
+        }
+    }
+
+    /** Receives a cloud reply on the main thread; null when the call failed. */
+    private interface CloudListener {
+        void onCloud(@Nullable CloudAnswer answer);
+    }
+
+    /** What we already know about one version of the input text. */
+    private static final class Speculation {
+        final String text;
+        CategorizationEngine.ParseResult local;
+        Call cloudCall;
+        boolean cloudDone;
+        CloudAnswer cloud;
+        CloudListener waiter; // Save arrived while the prefetch was in flight
+
+        Speculation(String text) {
+            this.text = text;
+        }
+    }
+
+    private Speculation speculation;
+    private Runnable pendingLocal;
+    private Runnable pendingPrefetch;
 
 
     @Override
@@ -67,40 +117,107 @@ public class AddExpenseActivity extends AppCompatActivity {
         etSmartInput = findViewById(R.id.etSmartInput);
         btnSave = findViewById(R.id.btnSaveExpense);
         progressBar = findViewById(R.id.progressBar);
+        cardDetectionPreview = findViewById(R.id.cardDetectionPreview);
+        tvDetectionSummary = findViewById(R.id.tvDetectionSummary);
+
+        etSmartInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
 
-        initLocalData();
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                onInputChanged(s.toString().trim());
+            }
+        });
 
         btnSave.setOnClickListener(v -> startSmartCategorization());
     }
 
-    /* -------------------- LOCAL DATA (PRESERVED) -------------------- */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // Only speculative work is dropped; a Save in progress still completes
+        cancelPendingSpeculation();
+        if (speculation != null && speculation.waiter == null && speculation.cloudCall != null) {
+            speculation.cloudCall.cancel();
+        }
+        speculator.shutdown();
+    }
+
+    /* -------------------- SPECULATIVE CATEGORIZATION -------------------- */
 
-    private void initLocalData() {
-        localVendorMap.put("zomato", "Food");
-        localVendorMap.put("swiggy", "Food");
-        localVendorMap.put("starbucks", "Food");
-        localVendorMap.put("blinkit", "Shopping");
-        localVendorMap.put("amazon", "Shopping");
-        localVendorMap.put("uber", "Transport");
-        localVendorMap.put("ola", "Transport");
+    private void onInputChanged(String text) {
+        if (speculation != null && speculation.text.equals(text)) return;
 
-        keywordClusters.put("Food",
-                Arrays.asList("coffee", "tea", "pizza", "burger", "dinner", "lunch"));
+        // The old text's work is stale: stop its timers and its prefetch
+        cancelPendingSpeculation();
+        if (speculation != null && speculation.cloudCall != null && !speculation.cloudDone
+                && speculation.waiter == null) {
+            speculation.cloudCall.cancel();
+        }
 
-        keywordClusters.put("Transport",
-                Arrays.asList("petrol", "fuel", "bus", "metro", "auto", "cab"));
+        if (text.isEmpty()) {
+            speculation = null;
+            cardDetectionPreview.setVisibility(View.GONE);
+            return;
+        }
 
-        keywordClusters.put("Shopping",
-                Arrays.asList(
-                        "clothes", "shoes", "mall", "grocery", "gift",
-                        "makeup", "lipstick", "cosmetics", "skincare"
-                ));
+        Speculation spec = new Speculation(text);
+        speculation = spec;
+        Context appContext = getApplicationContext();
 
-        keywordClusters.put("Health",
-                Arrays.asList("doctor", "medicine", "gym", "hospital"));
+        pendingLocal = () -> speculator.execute(() -> {
+            CategorizationEngine.ParseResult local = CategorizationEngine.processLocally(appContext, text);
+            mainHandler.post(() -> {
+                if (speculation != spec) return;
+                spec.local = local;
+                showPreview(spec);
+            });
+        });
+        mainHandler.postDelayed(pendingLocal, LOCAL_DEBOUNCE_MS);
 
-        keywordClusters.put("Bills",
-                Arrays.asList("electricity", "rent", "recharge", "wifi", "gas"));
+        pendingPrefetch = () -> {
+            // Confident local answers never need the cloud
+            if (speculation != spec || text.length() < MIN_PREFETCH_LENGTH
+                    || (spec.local != null && spec.local.isConfident() && spec.local.amount > 0)) {
+                return;
+            }
+            spec.cloudCall = requestCloud(text, answer -> {
+                spec.cloudDone = true;
+                spec.cloud = answer;
+                if (speculation == spec) showPreview(spec);
+                if (spec.waiter != null) spec.waiter.onCloud(answer);
+            });
+        };
+        mainHandler.postDelayed(pendingPrefetch, CLOUD_DEBOUNCE_MS);
+    }
+
+    private void cancelPendingSpeculation() {
+        if (pendingLocal != null) mainHandler.removeCallbacks(pendingLocal);
+        if (pendingPrefetch != null) mainHandler.removeCallbacks(pendingPrefetch);
+    }
+
+    private void showPreview(Speculation spec) {
+        double amount;
+        String category;
+        if (spec.cloud != null) {
+            amount = spec.cloud.amount;
+            category = spec.cloud.category;
+        } else if (spec.local != null) {
+            amount = spec.local.amount;
+            category = spec.local.category;
+        } else {
+            return;
+        }
+
+        String summary = amount > 0
+                ? "Detected: " + Money.format(Money.toPaise(amount)) + " for " + category
+                : "Detected: " + category;
+        tvDetectionSummary.setText(summary);
+        cardDetectionPreview.setVisibility(View.VISIBLE);
     }
 
     /* -------------------- CORE FLOW (PRESERVED) -------------------- */
@@ -109,24 +226,112 @@ public class AddExpenseActivity extends AppCompatActivity {
         String input = etSmartInput.getText().toString().trim();
         if (input.isEmpty()) return;
 
-        double amount = extractAmount(input);
-        String category = autoCategorize(input);
+        // Reuse whatever the speculation already worked out for exactly this text
+        cancelPendingSpeculation();
+        Speculation spec = speculation != null && speculation.text.equals(input) ? speculation : null;
 
-        if (!category.equals("Other") && amount > 0) {
-            saveExpense(amount, category, input);
-        } else {
-            callGeminiAI(input, amount);
+        if (spec != null && spec.cloud != null) {
+            double localAmount = spec.local != null ? spec.local.amount : 0;
+            LearnedKeywordStore.get(this).recordAiResult(input, spec.cloud.category);
+            saveExpense(spec.cloud.amount > 0 ? spec.cloud.amount : localAmount, spec.cloud.category, input);
+            return;
+        }
+
+        if (spec != null && spec.local != null) {
+            onLocalResult(input, spec.local, spec);
+            return;
         }
+
+        // Keyword layers, cached cloud answers and the on-device model; no network,
+        // but it reads the learned store and the model from disk, so not on main
+        progressBar.setVisibility(View.VISIBLE);
+        btnSave.setEnabled(false);
+        Context appContext = getApplicationContext();
+        speculator.execute(() -> {
+            CategorizationEngine.ParseResult local = CategorizationEngine.processLocally(appContext, input);
+            mainHandler.post(() -> {
+                if (isFinishing() || isDestroyed()) return;
+                onLocalResult(input, local, spec);
+            });
+        });
+    }
+
+    private void onLocalResult(String input, CategorizationEngine.ParseResult local,
+                               @Nullable Speculation spec) {
+        Log.d(TAG, "Local: " + local.category + " via " + local.source + " (" + local.confidence + ")");
+
+        if (local.isConfident() && local.amount > 0) {
+            saveExpense(local.amount, local.category, input);
+            return;
+        }
+
+        callGeminiAI(input, local, spec);
     }
 
-    /* -------------------- GEMINI CALL (PRESERVED) -------------------- */
+    /* -------------------- GEMINI CALL (DEADLINE-BOUND) -------------------- */
+
+    /**
+     * Asks the cloud, but waits at most {@link #CLOUD_BUDGET_MS}. Past the
+     * budget the local answer is saved, and a late cloud reply upgrades that
+     * document in place. Main-thread state only.
+     */
+    private static final class CloudAttempt {
+        boolean settled;            // something was saved (or is being saved)
+        DocumentReference savedRef; // set when the local answer won the race
+    }
 
-    private void callGeminiAI(String input, double fallbackAmount) {
-        progressBar.setVisibility(android.view.View.VISIBLE);
+    private void callGeminiAI(String input, CategorizationEngine.ParseResult local,
+                              @Nullable Speculation spec) {
+        progressBar.setVisibility(View.VISIBLE);
         btnSave.setEnabled(false);
 
-        OkHttpClient client = new OkHttpClient();
+        Context appContext = getApplicationContext();
+        CloudAttempt attempt = new CloudAttempt();
+        Runnable deadline = () -> {
+            if (attempt.settled) return;
+            attempt.settled = true;
+            Log.d(TAG, "Cloud missed the " + CLOUD_BUDGET_MS + " ms budget; saving local answer");
+            attempt.savedRef = saveExpense(local.amount, local.category, input);
+        };
+
+        CloudListener onCloud = answer -> {
+            if (answer != null) {
+                // Next time this wording resolves locally
+                LearnedKeywordStore.get(appContext).recordAiResult(input, answer.category);
+            }
 
+            if (!attempt.settled) {
+                attempt.settled = true;
+                mainHandler.removeCallbacks(deadline);
+                if (answer != null) {
+                    saveExpense(answer.amount > 0 ? answer.amount : local.amount, answer.category, input);
+                } else {
+                    saveExpense(local.amount, local.category, input);
+                }
+            } else if (answer != null && attempt.savedRef != null) {
+                upgradeExpense(attempt.savedRef, local, answer.amount, answer.category);
+            }
+        };
+
+        if (spec != null && spec.cloudCall != null && !spec.cloudDone) {
+            // The prefetch for this exact text is already in flight; wait for it instead
+            spec.waiter = onCloud;
+        } else if (requestCloud(input, onCloud) == null) {
+            attempt.settled = true;
+            saveExpense(local.amount, local.category, input);
+            return;
+        }
+
+        mainHandler.postDelayed(deadline, CLOUD_BUDGET_MS);
+    }
+
+    /**
+     * Sends one classification request. The listener runs on the main thread;
+     * answers are cached from the network thread. Null if it couldn't be sent.
+     */
+    @Nullable
+    private Call requestCloud(String input, CloudListener listener) {
+        Context appContext = getApplicationContext();
         try {
             JSONObject payload = new JSONObject();
 
@@ -152,21 +357,14 @@ public class AddExpenseActivity extends AppCompatActivity {
 
             payload.put("prompt", prompt);
 
-            RequestBody body = RequestBody.create(
-                    payload.toString(),
-                    MediaType.parse("application/json")
-            );
-
-            Request request = new Request.Builder()
-                    .url("https://geminirequest-vludjrerya-uc.a.run.app")
-                    .post(body)
-                    .build();
-
-            client.newCall(request).enqueue(new Callback() {
+            Call call = NetworkGateway.get(this)
+                    .postJson(NetworkGateway.GEMINI_URL, payload.toString());
+            call.enqueue(new Callback() {
 
                 @Override
                 public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                    runOnUiThread(() -> fallbackSave(input, fallbackAmount));
+                    if (call.isCanceled()) return; // superseded by newer input
+                    mainHandler.post(() -> listener.onCloud(null));
                 }
 
                 @Override
@@ -174,236 +372,115 @@ public class AddExpenseActivity extends AppCompatActivity {
                     String raw = response.body() != null ? response.body().string() : "";
                     Log.d("Gemini_Raw", raw);
 
-                    runOnUiThread(() -> {
-                        try {
-                            JSONObject json = new JSONObject(raw);
-                            double amount = json.optDouble("amount", fallbackAmount);
-                            String category = normalizeCategory(json.optString("category"));
-                            saveExpense(amount, category, input);
-                        } catch (Exception e) {
-                            fallbackSave(input, fallbackAmount);
-                        } finally {
-                            progressBar.setVisibility(android.view.View.GONE);
-                            btnSave.setEnabled(true);
-                        }
-                    });
+                    CloudAnswer answer = null;
+                    try {
+                        JSONObject json = new JSONObject(raw);
+                        String category = normalizeCategory(json.optString("category"));
+                        double amount = json.optDouble("amount", 0);
+                        answer = new CloudAnswer(amount, category);
+                        // Cache file I/O stays on this background thread
+                        GeminiCache.get(appContext).put(input, category, Money.toPaise(amount));
+                    } catch (Exception e) {
+                        Log.w("Gemini_Raw", "Unparseable response", e);
+                    }
+
+                    CloudAnswer result = answer;
+                    mainHandler.post(() -> listener.onCloud(result));
                 }
             });
+            return call;
 
         } catch (Exception e) {
-            fallbackSave(input, fallbackAmount);
-            progressBar.setVisibility(android.view.View.GONE);
-            btnSave.setEnabled(true);
+            Log.w(TAG, "Cloud request not sent", e);
+            return null;
         }
     }
 
-    private void fallbackSave(String input, double amount) {
-        saveExpense(amount, "Other", input);
-    }
-
     /* -------------------- HELPERS (PRESERVED) -------------------- */
 
-    private double extractAmount(String input) {
-        Matcher m = Pattern.compile("(\\d+(\\.\\d+)?)").matcher(input);
-        return m.find() ? Double.parseDouble(m.group(1)) : 0;
-    }
-
-    private String autoCategorize(String input) {
-        String text = input.toLowerCase();
-
-        for (String vendor : localVendorMap.keySet()) {
-            if (text.contains(vendor)) return localVendorMap.get(vendor);
-        }
-
-        for (Map.Entry<String, List<String>> entry : keywordClusters.entrySet()) {
-            for (String word : entry.getValue()) {
-                if (text.contains(word)) return entry.getKey();
-            }
-        }
-
-        SharedPreferences prefs = getSharedPreferences("AI_Learning", MODE_PRIVATE);
-        for (Map.Entry<String, ?> e : prefs.getAll().entrySet()) {
-            if (text.contains(e.getKey())) return (String) e.getValue();
-        }
-
-        return "Other";
-    }
-
     private String normalizeCategory(String cat) {
-        if (cat == null) return "Other";
-
-        switch (cat.toLowerCase().trim()) {
-            case "food": return "Food";
-            case "transport": return "Transport";
-            case "shopping": return "Shopping";
-            case "health": return "Health";
-            case "bills": return "Bills";
-            case "entertainment": return "Entertainment";
-            default: return "Other";
-        }
+        return CategorizationEngine.normalizeCategory(cat);
     }
 
     /* -------------------- FIREBASE (PRESERVED) -------------------- */
 
-    private void saveExpense(double amount, String category, String note) {
-        if (mAuth.getCurrentUser() == null) return;
+    // Returns the new document right away (id is generated client-side)
+    private DocumentReference saveExpense(double amount, String category, String note) {
+        if (mAuth.getCurrentUser() == null) return null;
+        String uid = mAuth.getCurrentUser().getUid();
+
+        Timestamp now = Timestamp.now();
+        savedAtMillis = now.toDate().getTime();
 
         Map<String, Object> data = new HashMap<>();
-        data.put("amount", amount);
+        data.put(Money.FIELD_RUPEES, amount);
+        data.put(Money.FIELD_PAISE, Money.toPaise(amount));
         data.put("category", category);
         data.put("note", note);
-        data.put("timestamp", Timestamp.now());
+        data.put("timestamp", now);
+        data.put(Timestamps.FIELD_WRITTEN_AT, FieldValue.serverTimestamp());
 
-        db.collection("Users")
-                .document(mAuth.getCurrentUser().getUid())
+        DocumentReference ref = db.collection("Users")
+                .document(uid)
                 .collection("Expenses")
-                .add(data)
-                .addOnSuccessListener(doc -> {
+                .document();
+
+        // Expense and its rollup increments land together
+        WriteBatch batch = db.batch();
+        batch.set(ref, data);
+        new Rollups.Delta().add(Money.toPaise(amount), category, savedAtMillis, 1)
+                .commit(batch, uid)
+                .addOnSuccessListener(unused -> {
                     Toast.makeText(this,
                             "Saved to " + category,
                             Toast.LENGTH_SHORT).show();
 
-                    detectTopAnomaly(amount, category);
+                    AnomalyDetector.check(uid, category);
+                    CategoryClassifier.syncFromHistory(this, uid);
 
                     finish();
                 })
-                .addOnFailureListener(e ->
-                        Toast.makeText(this,
-                                "Save failed",
-                                Toast.LENGTH_SHORT).show());
+                .addOnFailureListener(e -> {
+                    progressBar.setVisibility(View.GONE);
+                    btnSave.setEnabled(true);
+                    Toast.makeText(this,
+                            "Save failed",
+                            Toast.LENGTH_SHORT).show();
+                });
+        return ref;
     }
 
+    // Late cloud answer for an expense already saved from the local layers
+    private void upgradeExpense(DocumentReference ref, CategorizationEngine.ParseResult local,
+                                double cloudAmount, String cloudCategory) {
+        boolean categoryChanged = !cloudCategory.equals(local.category) && !"Other".equals(cloudCategory);
+        boolean amountFound = local.amount <= 0 && cloudAmount > 0;
+        if (!categoryChanged && !amountFound) return;
+
+        Map<String, Object> changes = new HashMap<>();
+        if (categoryChanged) changes.put("category", cloudCategory);
+        if (amountFound) {
+            changes.put(Money.FIELD_RUPEES, cloudAmount);
+            changes.put(Money.FIELD_PAISE, Money.toPaise(cloudAmount));
+        }
 
-
-    /* -------------------- CORRECTED ANOMALY DETECTION -------------------- */
-
-    private void detectTopAnomaly(double amount, String category) {
-
-        if (mAuth.getCurrentUser() == null) return;
-
-        String uid = mAuth.getCurrentUser().getUid();
-
-        final double expenseAmount = amount;
-        final String expenseCategory = category;
-
-        DocumentReference statsRef = db.collection("Users")
-                .document(uid)
-                .collection("Stats")
-                .document("baseline");
-
-        DocumentReference alertRef = db.collection("Users")
-                .document(uid)
-                .collection("Alerts")
-                .document(category);
-
-        statsRef.get().addOnSuccessListener(snapshot -> {
-
-            if (!snapshot.exists()) {
-                Log.w(TAG, "Baseline stats missing");
-                return;
-            }
-
-            Map<String, Object> catAvg =
-                    (Map<String, Object>) snapshot.get("categoryAverages");
-
-            if (catAvg == null || !catAvg.containsKey(category)) {
-                Log.w(TAG, "No avg found for category: " + category);
-                return;
-            }
-
-            double avg = ((Number) catAvg.get(category)).doubleValue();
-
-            // SAME threshold logic (unchanged)
-            double amountThreshold = Math.max(avg * 1.3, avg + 100);
-
-            // Start of today timestamp (unchanged)
-            Calendar cal = Calendar.getInstance();
-            cal.set(Calendar.HOUR_OF_DAY, 0);
-            cal.set(Calendar.MINUTE, 0);
-            cal.set(Calendar.SECOND, 0);
-            cal.set(Calendar.MILLISECOND, 0);
-            Timestamp startOfToday = new Timestamp(cal.getTime());
-
-            db.collection("Users")
-                    .document(uid)
-                    .collection("Expenses")
-                    .whereEqualTo("category", category)
-                    .whereGreaterThanOrEqualTo("timestamp", startOfToday)
-                    .get()
-                    .addOnSuccessListener(expensesSnapshot -> {
-
-                        int todayCount = expensesSnapshot.size();
-                        boolean isFrequencySpike = todayCount >= 5;
-
-                        // 🔹 NEW: calculate TODAY TOTAL
-                        double todayTotal = 0.0;
-                        for (QueryDocumentSnapshot doc : expensesSnapshot) {
-                            Double amt = doc.getDouble("amount");
-                            if (amt != null) todayTotal += amt;
-                        }
-
-                        // 🔹 FIXED amount spike logic
-                        boolean isAmountSpike = todayTotal >= amountThreshold;
-
-                        if (!isAmountSpike && !isFrequencySpike) {
-                            Log.d(TAG, "No anomaly detected for " + category);
-                            return;
-                        }
-
-                        double finalTodayTotal = todayTotal;
-                        alertRef.get().addOnSuccessListener(alertSnap -> {
-
-                            // --- START OF RESET LOGIC FIX ---
-                            boolean isOldAlertFromToday = false;
-                            if (alertSnap.exists()) {
-                                Timestamp lastAlertTimestamp = alertSnap.getTimestamp("timestamp");
-                                if (lastAlertTimestamp != null) {
-                                    Calendar calAlert = Calendar.getInstance();
-                                    calAlert.setTime(lastAlertTimestamp.toDate());
-
-                                    Calendar calNow = Calendar.getInstance();
-
-                                    isOldAlertFromToday = (calAlert.get(Calendar.YEAR) == calNow.get(Calendar.YEAR) &&
-                                            calAlert.get(Calendar.DAY_OF_YEAR) == calNow.get(Calendar.DAY_OF_YEAR));
-                                }
-                            }
-
-                            // Only fetch previous values if the alert found in DB is actually from TODAY
-                            double prevAmount = (alertSnap.exists() && isOldAlertFromToday && alertSnap.contains("amount"))
-                                    ? alertSnap.getDouble("amount") : 0;
-
-                            int prevCount = (alertSnap.exists() && isOldAlertFromToday && alertSnap.contains("count"))
-                                    ? alertSnap.getLong("count").intValue() : 0;
-                            // --- END OF RESET LOGIC FIX ---
-
-                            // SAME comparison logic, but with todayTotal
-                            // If it's a new day, prevAmount/prevCount are 0, so this check passes and updates.
-                            if (finalTodayTotal <= prevAmount && todayCount <= prevCount) return;
-
-                            Map<String, Object> alertData = new HashMap<>();
-                            alertData.put("type",
-                                    isAmountSpike ? "Amount Spike" : "Frequency Spike");
-                            alertData.put("category", category);
-
-                            // 🔹 FIX: store TOTAL, not single expense
-                            alertData.put("amount", finalTodayTotal);
-
-                            alertData.put("count", todayCount);
-                            alertData.put("timestamp", Timestamp.now());
-
-                            alertRef.set(alertData)
-                                    .addOnSuccessListener(v ->
-                                            Log.d(TAG, "🚨 Alert written for " + category))
-                                    .addOnFailureListener(e ->
-                                            Log.e(TAG, "Alert write failed", e));
-                        });
-                    })
-                    .addOnFailureListener(e ->
-                            Log.e(TAG, "Expense query failed", e));
-        }).addOnFailureListener(e ->
-                Log.e(TAG, "Stats fetch failed", e));
+        String uid = mAuth.getCurrentUser() != null ? mAuth.getCurrentUser().getUid() : null;
+        if (uid == null) return;
+
+        // Move the expense's rollup contribution along with it
+        long oldPaise = Money.toPaise(local.amount);
+        long newPaise = amountFound ? Money.toPaise(cloudAmount) : oldPaise;
+        String newCategory = categoryChanged ? cloudCategory : local.category;
+
+        WriteBatch batch = db.batch();
+        batch.update(ref, changes);
+        new Rollups.Delta()
+                .add(oldPaise, local.category, savedAtMillis, -1)
+                .add(newPaise, newCategory, savedAtMillis, 1)
+                .commit(batch, uid)
+                .addOnSuccessListener(unused -> {
+                    Log.d(TAG, "Upgraded " + ref.getId() + " with cloud answer " + cloudCategory);
+                    if (categoryChanged) AnomalyDetector.check(uid, cloudCategory);
+                });
     }
-
-
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,38 @@
+package com.example.finoptics;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+
+/**
+ * Sum and count over a filtered range of a user's Expenses, computed where
+ * the data lives so a screen receives two numbers instead of the documents.
+ *
+ * Production uses {@link ExpenseMirror}, or {@link FirestoreAggregationService}
+ * before the mirror is installed; tests and emulator runs can swap in
+ * {@link InMemoryAggregationService} through {@link Aggregations#use}.
+ */
+public interface AggregationService {
+
+    /** Totals for one range. */
+    final class Result {
+        public final long sumPaise;
+        public final long count;
+
+        public Result(long sumPaise, long count) {
+            this.sumPaise = sumPaise;
+            this.count = count;
+        }
+    }
+
+    /** Delivered on the main thread; null if the aggregation failed. */
+    interface Callback {
+        void onResult(@Nullable Result result);
+    }
+
+    /**
+     * Expenses with {@code fromMs <= timestamp < toMs}, limited to one
+     * category unless {@code category} is null.
+     */
+    @MainThread
+    void aggregate(String uid, long fromMs, long toMs, @Nullable String category, Callback callback);
+}
@@ -0,0 +1,38 @@
+package com.example.finoptics;
+
+import android.content.Context;
+
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Process-wide {@link AggregationService}: the local expense mirror once the
+ * app has installed it, Firestore until then or unless replaced.
+ */
+public final class Aggregations {
+
+    private static volatile AggregationService service;
+
+    private Aggregations() {}
+
+    public static AggregationService get() {
+        AggregationService s = service;
+        if (s == null) {
+            synchronized (Aggregations.class) {
+                if (service == null) service = new FirestoreAggregationService();
+                s = service;
+            }
+        }
+        return s;
+    }
+
+    /** Answers from {@link ExpenseMirror} from now on: milliseconds, and offline. */
+    public static void useMirror(Context context) {
+        service = ExpenseMirror.get(context);
+    }
+
+    /** Swaps the implementation, e.g. for tests or an emulator run. */
+    @VisibleForTesting
+    public static void use(AggregationService replacement) {
+        service = replacement;
+    }
+}
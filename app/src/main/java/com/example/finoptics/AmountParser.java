@@ -0,0 +1,118 @@
+package com.example.finoptics;
+
+/**
+ * Single-pass, allocation-free amount scanner shared by every ingestion
+ * source. Reads straight from the CharSequence and returns a fixed-point
+ * amount in paise, so no intermediate strings or doubles are created.
+ *
+ * Handles ₹ / Rs / Rs. / INR prefixes (any case), Indian lakh/crore grouping
+ * ("1,00,000"), western grouping ("100,000") and up to two decimals.
+ */
+public final class AmountParser {
+
+    /** Returned when the text holds no amount. */
+    public static final long NONE = -1;
+
+    // 15 digits of rupees is far beyond any real transaction and safe from overflow
+    private static final int MAX_RUPEE_DIGITS = 15;
+
+    private AmountParser() {}
+
+    /** First currency-prefixed amount in paise ("Rs.1,00,000.50" -> 10000050), or NONE. */
+    public static long parsePaise(CharSequence s) {
+        if (s == null) return NONE;
+        int n = s.length();
+
+        for (int i = 0; i < n; i++) {
+            int start = currencyEnd(s, i, n);
+            if (start < 0) continue;
+
+            // "Rs. 500", "INR: 500", "₹ 500"
+            while (start < n && isSeparator(s.charAt(start))) start++;
+
+            long paise = scanNumber(s, start, n);
+            if (paise != NONE) return paise;
+        }
+        return NONE;
+    }
+
+    /** First bare number in paise ("200 for fried rice" -> 20000), or NONE. Used for manual entry. */
+    public static long parseBarePaise(CharSequence s) {
+        if (s == null) return NONE;
+        int n = s.length();
+
+        for (int i = 0; i < n; i++) {
+            if (isDigit(s.charAt(i))) return scanNumber(s, i, n);
+        }
+        return NONE;
+    }
+
+    // ================= SCANNING =================
+
+    // Index just past a currency marker starting at i, or -1
+    private static int currencyEnd(CharSequence s, int i, int n) {
+        char c = s.charAt(i);
+        if (c == '₹') return i + 1;
+
+        // Word markers must not be the tail of a longer word ("hours", "linr")
+        if (i > 0 && Character.isLetter(s.charAt(i - 1))) return -1;
+
+        if ((c == 'r' || c == 'R') && i + 1 < n && lower(s.charAt(i + 1)) == 's') {
+            int end = i + 2;
+            if (end < n && s.charAt(end) == '.') end++;
+            return end < n && !Character.isLetter(s.charAt(end)) ? end : -1;
+        }
+        if ((c == 'i' || c == 'I') && i + 2 < n
+                && lower(s.charAt(i + 1)) == 'n' && lower(s.charAt(i + 2)) == 'r') {
+            int end = i + 3;
+            return end < n && !Character.isLetter(s.charAt(end)) ? end : -1;
+        }
+        return -1;
+    }
+
+    // Digits with ',' grouping and an optional 1–2 digit fraction, starting at i
+    private static long scanNumber(CharSequence s, int i, int n) {
+        if (i >= n || !isDigit(s.charAt(i))) return NONE;
+
+        long rupees = 0;
+        int digits = 0;
+
+        while (i < n) {
+            char c = s.charAt(i);
+            if (isDigit(c)) {
+                if (++digits > MAX_RUPEE_DIGITS) return NONE;
+                rupees = rupees * 10 + (c - '0');
+                i++;
+            } else if (c == ',' && i + 2 < n && isDigit(s.charAt(i + 1)) && isDigit(s.charAt(i + 2))) {
+                // Grouping comma: 1,00,000 and 100,000 both just continue the number;
+                // a single digit after it ("Rs 1,2,3") is a list, not grouping
+                i++;
+            } else {
+                break;
+            }
+        }
+
+        long paise = rupees * 100;
+
+        // Fraction only if a digit follows the point ("Rs.500." ends a sentence)
+        if (i + 1 < n && s.charAt(i) == '.' && isDigit(s.charAt(i + 1))) {
+            paise += (s.charAt(i + 1) - '0') * 10;
+            if (i + 2 < n && isDigit(s.charAt(i + 2))) {
+                paise += s.charAt(i + 2) - '0';
+            }
+        }
+        return paise;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == ':' || c == '.' || c == '\u00A0';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static char lower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+    }
+}
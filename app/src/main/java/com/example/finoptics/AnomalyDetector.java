@@ -0,0 +1,139 @@
+package com.example.finoptics;
+
+import android.util.Log;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Today's per-category spike detection against the server-computed baseline.
+ * Shared by manual entry and the auto-capture write queue, which calls it
+ * once per committed batch rather than once per expense.
+ */
+public final class AnomalyDetector {
+
+    private static final String TAG = "FinOptics_Anomaly";
+
+    private AnomalyDetector() {}
+
+    public static void check(String uid, String category) {
+        check(uid, Collections.singleton(category));
+    }
+
+    /** Reads the baseline once, then evaluates each touched category. */
+    public static void check(String uid, Collection<String> categories) {
+        if (uid == null || categories.isEmpty()) return;
+
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+
+        DocumentReference statsRef = db.collection("Users")
+                .document(uid)
+                .collection("Stats")
+                .document("baseline");
+
+        statsRef.get().addOnSuccessListener(snapshot -> {
+
+            if (!snapshot.exists()) {
+                Log.w(TAG, "Baseline stats missing");
+                return;
+            }
+
+            Map<String, Object> catAvg =
+                    (Map<String, Object>) snapshot.get("categoryAverages");
+
+            if (catAvg == null) return;
+
+            for (String category : categories) {
+                if (!catAvg.containsKey(category)) {
+                    Log.w(TAG, "No avg found for category: " + category);
+                    continue;
+                }
+                double avg = ((Number) catAvg.get(category)).doubleValue();
+                checkCategory(db, uid, category, avg);
+            }
+        }).addOnFailureListener(e ->
+                Log.e(TAG, "Stats fetch failed", e));
+    }
+
+    private static void checkCategory(FirebaseFirestore db, String uid, String category, double avg) {
+
+        DocumentReference alertRef = db.collection("Users")
+                .document(uid)
+                .collection("Alerts")
+                .document(category);
+
+        double amountThreshold = Math.max(avg * 1.3, avg + 100);
+
+        Calendar cal = Calendar.getInstance();
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+
+        // Server-side sum/count: today's expenses in this category never leave Firestore
+        Aggregations.get().aggregate(uid, cal.getTimeInMillis(), Long.MAX_VALUE, category,
+                today -> {
+                    if (today == null) return;
+
+                    int todayCount = (int) today.count;
+                    boolean isFrequencySpike = todayCount >= 5;
+
+                    double todayTotal = Money.toRupees(today.sumPaise);
+
+                    boolean isAmountSpike = todayTotal >= amountThreshold;
+
+                    if (!isAmountSpike && !isFrequencySpike) {
+                        Log.d(TAG, "No anomaly detected for " + category);
+                        return;
+                    }
+
+                    double finalTodayTotal = todayTotal;
+                    alertRef.get().addOnSuccessListener(alertSnap -> {
+
+                        // Previous values only count if the stored alert is from TODAY
+                        boolean isOldAlertFromToday = false;
+                        if (alertSnap.exists()) {
+                            Timestamp lastAlertTimestamp = alertSnap.getTimestamp("timestamp");
+                            if (lastAlertTimestamp != null) {
+                                Calendar calAlert = Calendar.getInstance();
+                                calAlert.setTime(lastAlertTimestamp.toDate());
+
+                                Calendar calNow = Calendar.getInstance();
+
+                                isOldAlertFromToday = (calAlert.get(Calendar.YEAR) == calNow.get(Calendar.YEAR) &&
+                                        calAlert.get(Calendar.DAY_OF_YEAR) == calNow.get(Calendar.DAY_OF_YEAR));
+                            }
+                        }
+
+                        double prevAmount = (alertSnap.exists() && isOldAlertFromToday && alertSnap.contains("amount"))
+                                ? alertSnap.getDouble("amount") : 0;
+
+                        int prevCount = (alertSnap.exists() && isOldAlertFromToday && alertSnap.contains("count"))
+                                ? alertSnap.getLong("count").intValue() : 0;
+
+                        if (finalTodayTotal <= prevAmount && todayCount <= prevCount) return;
+
+                        Map<String, Object> alertData = new HashMap<>();
+                        alertData.put("type",
+                                isAmountSpike ? "Amount Spike" : "Frequency Spike");
+                        alertData.put("category", category);
+                        alertData.put("amount", finalTodayTotal);
+                        alertData.put("count", todayCount);
+                        alertData.put("timestamp", Timestamp.now());
+
+                        alertRef.set(alertData)
+                                .addOnSuccessListener(v ->
+                                        Log.d(TAG, "🚨 Alert written for " + category))
+                                .addOnFailureListener(e ->
+                                        Log.e(TAG, "Alert write failed", e));
+                    });
+                });
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.finoptics;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Response;
+
+/**
+ * Background re-categorization of auto-captured expenses left as "Other".
+ *
+ * SMS and notification captures never reach the cloud classifier, so they
+ * pile up in "Other". This job pages through those expenses, resolves what it
+ * can locally (learned keywords grow over time, and {@link GeminiCache} holds
+ * earlier answers), and sends the rest to the classifier {@link #BATCH_SIZE}
+ * notes per request. All changes are applied with a single WriteBatch.
+ */
+public final class BatchCategorizer {
+
+    private static final String TAG = "FinOptics_BatchCat";
+    private static final String PREFS = "BatchCategorizer";
+    private static final String KEY_LAST_RUN = "lastRun";
+
+    // Notes per classifier request
+    private static final int BATCH_SIZE = 50;
+
+    // Bounds the cost of one run; whatever is left is picked up next time
+    private static final int MAX_REQUESTS_PER_RUN = 4;
+
+    // Updates per run stay under Firestore's 500-write batch limit
+    private static final int MAX_UPDATES_PER_RUN = 400;
+
+    private static final int PAGE_SIZE = 200;
+    private static final long MIN_INTERVAL_MS = 6 * 60 * 60 * 1000L;
+
+    private static final AtomicBoolean running = new AtomicBoolean(false);
+
+    private BatchCategorizer() {}
+
+    /** Starts a run on its own thread unless one ran recently or is still running. */
+    public static void start(Context context) {
+        Context appContext = context.getApplicationContext();
+        SharedPreferences prefs = appContext.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        if (System.currentTimeMillis() - prefs.getLong(KEY_LAST_RUN, 0) < MIN_INTERVAL_MS) return;
+        if (!running.compareAndSet(false, true)) return;
+
+        Thread worker = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            try {
+                // Before login nothing runs, so nothing is stamped either
+                if (run(appContext)) prefs.edit().putLong(KEY_LAST_RUN, System.currentTimeMillis()).apply();
+            } catch (Exception e) {
+                // Nothing was written unless the batch committed; next start retries
+                Log.e(TAG, "Batch categorization failed", e);
+            } finally {
+                running.set(false);
+            }
+        }, "finoptics-categorizer");
+        worker.start();
+    }
+
+    // False if there was no account to run for
+    private static boolean run(Context context) throws Exception {
+        String uid = context.getSharedPreferences("FinOptics", Context.MODE_PRIVATE)
+                .getString("uid", null);
+        if (uid == null) {
+            Log.e(TAG, "UID missing — categorization postponed");
+            return false;
+        }
+
+        CategorizationEngine.sync(context);
+        GeminiCache cache = GeminiCache.get(context);
+        CollectionReference expenses = FirebaseFirestore.getInstance()
+                .collection("Users").document(uid).collection("Expenses");
+
+        Map<String, String> updates = new LinkedHashMap<>();   // doc id -> new category
+        Map<String, String> updatedNotes = new LinkedHashMap<>(); // doc id -> note
+        Map<String, DocumentSnapshot> candidates = new HashMap<>(); // doc id -> as read
+        List<String> pendingIds = new ArrayList<>();
+        List<String> pendingNotes = new ArrayList<>();
+        int maxPending = BATCH_SIZE * MAX_REQUESTS_PER_RUN;
+
+        // ---- Collect: resolve locally where possible ----
+        DocumentSnapshot last = null;
+        while (pendingIds.size() < maxPending && updates.size() < MAX_UPDATES_PER_RUN) {
+            Query page = expenses.whereEqualTo("category", "Other").limit(PAGE_SIZE);
+            if (last != null) page = page.startAfter(last);
+            QuerySnapshot snapshot = Tasks.await(page.get());
+            if (snapshot.isEmpty()) break;
+
+            for (DocumentSnapshot doc : snapshot.getDocuments()) {
+                last = doc;
+                String note = doc.getString("note");
+                if (note == null || note.trim().isEmpty()) continue;
+                candidates.put(doc.getId(), doc);
+
+                String local = CategorizationEngine.match(note);
+                if (local == null) {
+                    GeminiCache.Hit hit = cache.lookup(note);
+                    // A cached "Other" is a settled answer; don't ask again
+                    if (hit != null) local = hit.category;
+                }
+
+                if (local == null) {
+                    if (pendingIds.size() < maxPending) {
+                        pendingIds.add(doc.getId());
+                        pendingNotes.add(note);
+                    }
+                } else if (!"Other".equals(local) && updates.size() < MAX_UPDATES_PER_RUN) {
+                    updates.put(doc.getId(), local);
+                    updatedNotes.put(doc.getId(), note);
+                }
+            }
+            if (snapshot.size() < PAGE_SIZE) break;
+        }
+
+        // ---- Classify the rest, BATCH_SIZE notes per request ----
+        NetworkGateway gateway = NetworkGateway.get(context);
+        LearnedKeywordStore learned = LearnedKeywordStore.get(context);
+
+        for (int from = 0; from < pendingNotes.size(); from += BATCH_SIZE) {
+            int to = Math.min(pendingNotes.size(), from + BATCH_SIZE);
+            List<String> notes = pendingNotes.subList(from, to);
+
+            String[] categories = classify(gateway, notes);
+            if (categories == null) break; // endpoint unhappy; keep the rest for next run
+
+            for (int i = 0; i < categories.length; i++) {
+                String note = notes.get(i);
+                cache.put(note, categories[i], 0);
+                learned.recordAiResult(note, categories[i]);
+                if (!"Other".equals(categories[i]) && updates.size() < MAX_UPDATES_PER_RUN) {
+                    updates.put(pendingIds.get(from + i), categories[i]);
+                    updatedNotes.put(pendingIds.get(from + i), note);
+                }
+            }
+        }
+
+        // ---- Apply, moving each amount between category rollups ----
+        if (updates.isEmpty()) return true;
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        WriteBatch batch = db.batch();
+        Rollups.Delta rollups = new Rollups.Delta();
+        int writes = 0;
+        for (Map.Entry<String, String> e : updates.entrySet()) {
+            if (writes + 1 + rollups.documents() + 2 > Rollups.MAX_BATCH_WRITES) {
+                Tasks.await(rollups.commit(batch, uid));
+                batch = db.batch();
+                rollups = new Rollups.Delta();
+                writes = 0;
+            }
+            DocumentSnapshot doc = candidates.get(e.getKey());
+            batch.update(expenses.document(e.getKey()), "category", e.getValue(),
+                    Timestamps.FIELD_WRITTEN_AT, FieldValue.serverTimestamp());
+            rollups.add(doc, -1).add(Money.paiseOf(doc), e.getValue(),
+                    Timestamps.millisOf(doc), 1);
+            writes++;
+        }
+        Tasks.await(rollups.commit(batch, uid));
+        Log.d(TAG, "✅ Re-categorized " + updates.size() + " expense(s)");
+
+        // History training skipped these while they were "Other"
+        CategoryClassifier classifier = CategoryClassifier.get(context, uid);
+        for (Map.Entry<String, String> e : updates.entrySet()) {
+            classifier.learn(e.getKey(), updatedNotes.get(e.getKey()), e.getValue());
+        }
+        classifier.save();
+        return true;
+    }
+
+    // One request for the whole list; null unless every note got a category
+    private static String[] classify(NetworkGateway gateway, List<String> notes) {
+        StringBuilder prompt = new StringBuilder(
+                "You are an expense classification system.\n\n" +
+                        "For EACH numbered expense choose EXACTLY ONE category from:\n" +
+                        "Food, Transport, Shopping, Health, Bills, Entertainment, Other\n\n");
+        for (int i = 0; i < notes.size(); i++) {
+            prompt.append(i + 1).append(". \"").append(notes.get(i).replace('"', '\'')).append("\"\n");
+        }
+        prompt.append("\nReturn ONLY JSON, categories in the same order:\n")
+                .append("{ \"categories\": [string, ...] }");
+
+        try {
+            JSONObject payload = new JSONObject();
+            payload.put("prompt", prompt.toString());
+
+            try (Response response = gateway
+                    .postJson(NetworkGateway.GEMINI_URL, payload.toString())
+                    .execute()) {
+                if (!response.isSuccessful() || response.body() == null) {
+                    Log.w(TAG, "Classifier returned " + response.code());
+                    return null;
+                }
+
+                JSONArray array = new JSONObject(response.body().string()).optJSONArray("categories");
+                if (array == null || array.length() != notes.size()) {
+                    Log.w(TAG, "Classifier answer does not line up with the request");
+                    return null;
+                }
+
+                String[] out = new String[array.length()];
+                for (int i = 0; i < out.length; i++) {
+                    out[i] = CategorizationEngine.normalizeCategory(array.optString(i));
+                }
+                return out;
+            }
+        } catch (IOException | org.json.JSONException e) {
+            Log.w(TAG, "Classifier request failed", e);
+            return null;
+        }
+    }
+}
@@ -1,80 +1,208 @@
 package com.example.finoptics;
 
+import android.content.Context;
+
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 public class CategorizationEngine {
 
     // --- LAYER 1: Direct Vendor Mapping ---
     private static final Map<String, String> VENDOR_MAP = new HashMap<String, String>() {{
-        put("starbucks", "Food & Dining");
-        put("zomato", "Food & Dining");
-        put("swiggy", "Food & Dining");
+        put("starbucks", "Food");
+        put("zomato", "Food");
+        put("swiggy", "Food");
         put("uber", "Transport");
         put("ola", "Transport");
         put("netflix", "Entertainment");
         put("amazon", "Shopping");
-        put("petrol", "Transport");
+        put("flipkart", "Shopping");
+        put("blinkit", "Shopping");
     }};
 
     // --- LAYER 2: Keyword Clusters ---
     private static final String[] FOOD_KEYS = {"rice", "tea", "coffee", "burger", "pizza", "lunch", "dinner", "juice"};
-    private static final String[] TRAVEL_KEYS = {"fuel", "auto", "metro", "bus", "parking", "cab"};
+    private static final String[] TRAVEL_KEYS = {"fuel", "petrol", "auto", "metro", "bus", "parking", "cab"};
+    private static final String[] SHOPPING_KEYS = {"clothes", "shoes", "mall", "grocery", "gift", "makeup", "lipstick", "cosmetics", "skincare"};
+    private static final String[] HEALTH_KEYS = {"doctor", "medicine", "hospital", "gym"};
+    private static final String[] BILLS_KEYS = {"electricity", "rent", "wifi", "recharge", "gas"};
+
+    // Layers 1 + 2 as a set, so the learning layer doesn't shadow them
+    private static final Set<String> BUILT_IN = new HashSet<>(VENDOR_MAP.keySet());
+    static {
+        for (String[] keys : new String[][]{FOOD_KEYS, TRAVEL_KEYS, SHOPPING_KEYS, HEALTH_KEYS, BILLS_KEYS}) {
+            BUILT_IN.addAll(Arrays.asList(keys));
+        }
+    }
+
+    // Rebuilt only when the LearnedKeywordStore generation moves
+    private static volatile KeywordAutomaton automaton = newBuilder().build();
+    private static volatile int builtGeneration = -1;
+
+    // Source layers reported in ParseResult.source
+    public static final String SOURCE_VENDOR = "vendor";
+    public static final String SOURCE_KEYWORD = "keyword";
+    public static final String SOURCE_LEARNED = "learned";
+    public static final String SOURCE_CACHE = "cache";
+    public static final String SOURCE_MODEL = "model";
+    public static final String SOURCE_CLOUD = "cloud";
+    public static final String SOURCE_NONE = "none";
+
+    // Fixed confidence per rule layer; the model reports its own posterior
+    private static final double CONFIDENCE_VENDOR = 0.95;
+    private static final double CONFIDENCE_CACHE = 0.9;
+    private static final double CONFIDENCE_KEYWORD = 0.85;
+    private static final double CONFIDENCE_LEARNED = 0.8;
+
+    /** At or above this a local answer is saved without asking the cloud. */
+    public static final double CONFIDENT = 0.8;
 
     /**
-     * Main entry point for the 3-layer logic.
-     * Returns a Result object containing Amount and Category.
+     * Amount plus the rule layers: one {@link KeywordAutomaton} scan over the
+     * vendor, keyword-cluster and learned dictionaries, whole words only, the
+     * highest-priority layer winning. Category stays null when nothing matches;
+     * the caller then falls through to the cache, the model or the cloud.
      */
     public static ParseResult process(String note) {
         ParseResult result = new ParseResult();
         String input = note.toLowerCase().trim();
 
-        // 1. Always extract the amount first using Regex
+        // 1. Amount, via the shared single-pass AmountParser
         result.amount = extractAmount(input);
 
-        // 2. Try Layer 1: Vendor Match
-        result.category = getLocalMatch(input);
-
-        // 3. Try Layer 2: Keyword Match (if Layer 1 failed)
-        if (result.category == null) {
-            result.category = getKeywordMatch(input);
+        // 2. Vendor > keyword cluster > learned keyword, in a single automaton scan
+        KeywordAutomaton current = automaton;
+        int id = current.bestMatchId(input);
+        if (id >= 0) {
+            result.category = current.categoryOf(id);
+            switch (current.layerOf(id)) {
+                case KeywordAutomaton.LAYER_VENDOR:
+                    result.source = SOURCE_VENDOR;
+                    result.confidence = CONFIDENCE_VENDOR;
+                    break;
+                case KeywordAutomaton.LAYER_CLUSTER:
+                    result.source = SOURCE_KEYWORD;
+                    result.confidence = CONFIDENCE_KEYWORD;
+                    break;
+                default:
+                    result.source = SOURCE_LEARNED;
+                    result.confidence = CONFIDENCE_LEARNED;
+            }
         }
 
-        // If result.category is still null, the Activity will trigger Layer 3 (Cloud AI)
+        // Still null: no rule layer knows this note
         return result;
     }
 
-    private static String getLocalMatch(String input) {
-        for (String key : VENDOR_MAP.keySet()) {
-            if (input.contains(key)) return VENDOR_MAP.get(key);
+    /**
+     * Best answer available without the network: keyword layers, then the
+     * cloud-answer cache, then the on-device model. Never null; category is
+     * "Other" with confidence 0 when nothing applies.
+     */
+    public static ParseResult processLocally(Context context, String note) {
+        sync(context);
+        ParseResult result = process(note);
+        if (result.category != null) return result;
+
+        GeminiCache.Hit hit = GeminiCache.get(context).lookup(note);
+        if (hit != null) {
+            // A cached "Other" is a settled answer too
+            result.category = hit.category;
+            result.source = SOURCE_CACHE;
+            result.confidence = CONFIDENCE_CACHE;
+            if (result.amount <= 0) result.amount = Money.toRupees(hit.amountPaise);
+            return result;
+        }
+
+        CategoryClassifier.Prediction prediction = CategoryClassifier.get(context).predict(note);
+        if (prediction != null) {
+            result.category = prediction.category;
+            result.source = SOURCE_MODEL;
+            result.confidence = prediction.confidence;
+            return result;
         }
-        return null;
+
+        result.category = "Other";
+        return result;
     }
 
-    private static String getKeywordMatch(String input) {
-        for (String key : FOOD_KEYS) {
-            if (input.contains(key)) return "Food & Dining";
+    /**
+     * Vendor > keyword cluster > learned keyword, or "Other" when nothing matches.
+     * Shared by SMS, notification and manual entry paths.
+     */
+    public static String categorize(Context context, String input) {
+        sync(context);
+
+        String category = match(input);
+        return category != null ? category : "Other";
+    }
+
+    /** Highest-priority category for the text, or null. */
+    public static String match(CharSequence input) {
+        return automaton.bestMatch(input);
+    }
+
+    /** Rebuilds the automaton if the learned dictionary changed since the last build. */
+    public static void sync(Context context) {
+        LearnedKeywordStore store = LearnedKeywordStore.get(context);
+        if (store.generation() == builtGeneration) return;
+
+        synchronized (CategorizationEngine.class) {
+            int generation = store.generation();
+            if (generation == builtGeneration) return;
+
+            automaton = newBuilder()
+                    .addAll(store.snapshot(), KeywordAutomaton.LAYER_LEARNED)
+                    .build();
+            builtGeneration = generation;
         }
-        for (String key : TRAVEL_KEYS) {
-            if (input.contains(key)) return "Transport";
+    }
+
+    /** Maps a free-form category label (e.g. from the cloud classifier) onto ours. */
+    public static String normalizeCategory(String cat) {
+        if (cat == null) return "Other";
+
+        switch (cat.toLowerCase().trim()) {
+            case "food": return "Food";
+            case "transport": return "Transport";
+            case "shopping": return "Shopping";
+            case "health": return "Health";
+            case "bills": return "Bills";
+            case "entertainment": return "Entertainment";
+            default: return "Other";
         }
-        return null;
+    }
+
+    static boolean isBuiltInKeyword(String word) {
+        return BUILT_IN.contains(word);
+    }
+
+    private static KeywordAutomaton.Builder newBuilder() {
+        return new KeywordAutomaton.Builder()
+                .addAll(VENDOR_MAP, KeywordAutomaton.LAYER_VENDOR)
+                .addCluster("Food", FOOD_KEYS)
+                .addCluster("Transport", TRAVEL_KEYS)
+                .addCluster("Shopping", SHOPPING_KEYS)
+                .addCluster("Health", HEALTH_KEYS)
+                .addCluster("Bills", BILLS_KEYS);
     }
 
     private static double extractAmount(String input) {
-        Pattern p = Pattern.compile("(\\d+(\\.\\d+)?)");
-        Matcher m = p.matcher(input);
-        if (m.find()) {
-            return Double.parseDouble(m.group(1));
-        }
-        return 0.0;
+        return IngestionEngine.extractAmount(input);
     }
 
     // Helper class to return multiple values
     public static class ParseResult {
         public double amount = 0.0;
         public String category = null;
+        public double confidence = 0.0;       // 0..1
+        public String source = SOURCE_NONE;   // layer that produced the category
+
+        public boolean isConfident() {
+            return category != null && confidence >= CONFIDENT;
+        }
     }
-}
\ No newline at end of file
+}
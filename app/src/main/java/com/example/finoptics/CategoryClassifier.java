@@ -0,0 +1,338 @@
+package com.example.finoptics;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * On-device multinomial naive Bayes over the user's own expense notes.
+ *
+ * Words are hashed into {@link #BUCKETS} features; the model is nothing but
+ * per-class document/token counts and one flat int[] of feature counts, so
+ * training is a few increments and prediction is a handful of array reads.
+ * It is trained incrementally from the signed-in user's categorized Expenses
+ * and persisted to filesDir, one file per uid. Training follows the write
+ * time of each document rather than its expense date, so back-dated imports
+ * are not skipped, and remembers the ids it has learned so a rewrite is
+ * never counted twice. Sits between the keyword layers and the cloud
+ * classifier; callers compare the posterior with
+ * {@link CategorizationEngine#CONFIDENT}.
+ */
+public final class CategoryClassifier {
+
+    private static final String TAG = "FinOptics_Classifier";
+    private static final String FILE_PREFIX = "category_model-";
+    private static final String LEGACY_FILE_NAME = "category_model.bin"; // shared by every user
+    private static final int MAGIC = 0x4E42_0002; // "NB", format 2
+
+    // "Other" is the absence of a signal, so it is never a class
+    static final String[] CATEGORIES = {"Food", "Transport", "Shopping", "Health", "Bills", "Entertainment"};
+
+    private static final int BUCKETS = 4096; // power of two
+    private static final int MIN_DOCUMENTS = 30;
+    private static final int MAX_WORDS = 64;
+    private static final int PAGE_SIZE = 500;
+
+    public static final class Prediction {
+        public final String category;
+        public final double confidence;
+
+        Prediction(String category, double confidence) {
+            this.category = category;
+            this.confidence = confidence;
+        }
+    }
+
+    private static CategoryClassifier instance; // the current user's model
+    private static final AtomicBoolean syncing = new AtomicBoolean(false);
+
+    private final String uid;
+    private final File file; // null when nobody is signed in: memory only
+    private final int[] docs = new int[CATEGORIES.length];
+    private final int[] tokens = new int[CATEGORIES.length];
+    private final int[] counts = new int[CATEGORIES.length * BUCKETS]; // [class * BUCKETS + feature]
+    private final int[] scratch = new int[MAX_WORDS]; // feature ids of the text being handled
+    private int totalDocs;
+
+    // Expense ids already learned (hashed); replays and rewrites are skipped
+    private final Set<Long> trained = new HashSet<>();
+    // Whole history read once; after that only newer writes are
+    private boolean scanned;
+    // Newest write time already trained past
+    private long writtenSeconds;
+    private int writtenNanos;
+
+    private CategoryClassifier(String uid, File file) {
+        this.uid = uid;
+        this.file = file;
+        load();
+    }
+
+    /** Model of the user the app is signed in as. */
+    public static CategoryClassifier get(Context context) {
+        return get(context, context.getSharedPreferences("FinOptics", Context.MODE_PRIVATE)
+                .getString("uid", null));
+    }
+
+    public static synchronized CategoryClassifier get(Context context, String uid) {
+        if (instance == null || !Objects.equals(instance.uid, uid)) {
+            File dir = context.getApplicationContext().getFilesDir();
+            new File(dir, LEGACY_FILE_NAME).delete();
+            instance = new CategoryClassifier(uid,
+                    uid == null ? null : new File(dir, FILE_PREFIX + uid + ".bin"));
+        }
+        return instance;
+    }
+
+    // ================= PREDICTION =================
+
+    /** Best class and its posterior, however unsure; null with no usable evidence. */
+    @Nullable
+    public synchronized Prediction predict(CharSequence text) {
+        if (text == null || totalDocs < MIN_DOCUMENTS) return null;
+
+        int c = CATEGORIES.length;
+        double[] score = new double[c];
+        for (int k = 0; k < c; k++) {
+            score[k] = Math.log((docs[k] + 1.0) / (totalDocs + c));
+        }
+
+        boolean known = false;
+        int words = features(text);
+        for (int w = 0; w < words; w++) {
+            int f = scratch[w];
+            for (int k = 0; k < c; k++) {
+                int count = counts[k * BUCKETS + f];
+                if (count > 0) known = true;
+                // Laplace smoothing over all buckets
+                score[k] += Math.log((count + 1.0) / (tokens[k] + BUCKETS));
+            }
+        }
+        if (!known) return null;
+
+        // Softmax over log scores
+        int best = 0;
+        for (int k = 1; k < c; k++) if (score[k] > score[best]) best = k;
+        double sum = 0;
+        for (int k = 0; k < c; k++) sum += Math.exp(score[k] - score[best]);
+        return new Prediction(CATEGORIES[best], 1.0 / sum);
+    }
+
+    // ================= TRAINING =================
+
+    /**
+     * Adds one labelled expense unless its id was already learned; "Other"
+     * and unknown labels are ignored. Memory only.
+     */
+    public synchronized boolean learn(String id, CharSequence text, String category) {
+        long key = DuplicateIndex.textKey("expense", id);
+        if (trained.contains(key) || !learn(text, category)) return false;
+        trained.add(key);
+        return true;
+    }
+
+    private boolean learn(CharSequence text, String category) {
+        int k = indexOf(category);
+        if (text == null || k < 0) return false;
+
+        int words = features(text);
+        if (words == 0) return false;
+        for (int w = 0; w < words; w++) counts[k * BUCKETS + scratch[w]]++;
+        tokens[k] += words;
+        docs[k]++;
+        totalDocs++;
+        return true;
+    }
+
+    /**
+     * Trains on Expenses written since the checkpoint, in the background,
+     * then saves. Cheap to call often: usually only a page of new documents.
+     */
+    public static void syncFromHistory(Context context, String uid) {
+        if (uid == null || !syncing.compareAndSet(false, true)) return;
+        Context appContext = context.getApplicationContext();
+
+        Thread worker = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            try {
+                get(appContext, uid).trainSince();
+            } catch (Exception e) {
+                // Whatever was trained stays in memory; the next sync resumes after it
+                Log.e(TAG, "History training stopped", e);
+            } finally {
+                syncing.set(false);
+            }
+        }, "finoptics-classifier");
+        worker.start();
+    }
+
+    private void trainSince() throws Exception {
+        CollectionReference expenses = FirebaseFirestore.getInstance()
+                .collection("Users").document(uid).collection("Expenses");
+
+        int learned = 0;
+        boolean firstPass;
+        synchronized (this) {
+            firstPass = !scanned;
+        }
+        if (firstPass) {
+            // Everything once, by document id: documents from before writtenAt existed
+            DocumentSnapshot last = null;
+            while (true) {
+                Query page = expenses.limit(PAGE_SIZE);
+                if (last != null) page = page.startAfter(last);
+                QuerySnapshot snapshot = Tasks.await(page.get());
+                for (DocumentSnapshot doc : snapshot.getDocuments()) {
+                    last = doc;
+                    if (learn(doc.getId(), doc.getString("note"), doc.getString("category"))) learned++;
+                }
+                if (snapshot.size() < PAGE_SIZE) break;
+            }
+            synchronized (this) {
+                scanned = true;
+            }
+        }
+
+        // Then by write time, however far back the expense itself is dated.
+        // >= because one batch shares a commit time; learned ids are skipped.
+        Timestamp checkpoint;
+        synchronized (this) {
+            checkpoint = new Timestamp(writtenSeconds, writtenNanos);
+        }
+        Query base = expenses.whereGreaterThanOrEqualTo(Timestamps.FIELD_WRITTEN_AT, checkpoint)
+                .orderBy(Timestamps.FIELD_WRITTEN_AT)
+                .limit(PAGE_SIZE);
+        DocumentSnapshot last = null;
+        while (true) {
+            Query page = last == null ? base : base.startAfter(last);
+            QuerySnapshot snapshot = Tasks.await(page.get());
+            for (DocumentSnapshot doc : snapshot.getDocuments()) {
+                last = doc;
+                Timestamp written = doc.getTimestamp(Timestamps.FIELD_WRITTEN_AT);
+                synchronized (this) {
+                    if (learn(doc.getId(), doc.getString("note"), doc.getString("category"))) learned++;
+                    if (written != null) {
+                        writtenSeconds = written.getSeconds();
+                        writtenNanos = written.getNanoseconds();
+                    }
+                }
+            }
+            if (snapshot.size() < PAGE_SIZE) break;
+        }
+
+        if (learned > 0 || firstPass) {
+            save();
+            Log.d(TAG, "✅ Trained on " + learned + " expense(s), " + totalDocs + " total");
+        }
+    }
+
+    // Hashes each word (2+ letters, case-folded) into scratch; returns the word count
+    private int features(CharSequence text) {
+        int words = 0;
+        int n = text.length(), i = 0;
+        while (i < n && words < scratch.length) {
+            while (i < n && !Character.isLetter(text.charAt(i))) i++;
+            int start = i;
+            int h = 0x811c9dc5;
+            while (i < n && Character.isLetter(text.charAt(i))) {
+                h = (h ^ Character.toLowerCase(text.charAt(i))) * 0x01000193;
+                i++;
+            }
+            if (i - start >= 2) scratch[words++] = h & (BUCKETS - 1);
+        }
+        return words;
+    }
+
+    private static int indexOf(String category) {
+        for (int k = 0; k < CATEGORIES.length; k++) {
+            if (CATEGORIES[k].equals(category)) return k;
+        }
+        return -1;
+    }
+
+    // ================= PERSISTENCE =================
+
+    private void load() {
+        if (file == null || !file.exists()) return;
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != CATEGORIES.length
+                    || in.readInt() != BUCKETS) {
+                Log.w(TAG, "Model format changed; retraining from history");
+                return;
+            }
+            scanned = in.readBoolean();
+            writtenSeconds = in.readLong();
+            writtenNanos = in.readInt();
+            totalDocs = in.readInt();
+            for (int k = 0; k < docs.length; k++) docs[k] = in.readInt();
+            for (int k = 0; k < tokens.length; k++) tokens[k] = in.readInt();
+            for (int j = 0; j < counts.length; j++) counts[j] = in.readInt();
+            for (int n = in.readInt(); n > 0; n--) trained.add(in.readLong());
+        } catch (IOException e) {
+            Log.e(TAG, "Model load failed; retraining from history", e);
+            reset();
+        }
+    }
+
+    /** Writes the model (~100 KB plus 8 bytes per expense). Does file I/O: call from a background thread. */
+    public synchronized void save() {
+        if (file == null) return;
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(CATEGORIES.length);
+            out.writeInt(BUCKETS);
+            out.writeBoolean(scanned);
+            out.writeLong(writtenSeconds);
+            out.writeInt(writtenNanos);
+            out.writeInt(totalDocs);
+            for (int d : docs) out.writeInt(d);
+            for (int t : tokens) out.writeInt(t);
+            for (int c : counts) out.writeInt(c);
+            out.writeInt(trained.size());
+            for (long id : trained) out.writeLong(id);
+        } catch (IOException e) {
+            Log.e(TAG, "Model save failed", e);
+            return;
+        }
+        if (!tmp.renameTo(file)) Log.e(TAG, "Model save failed: rename");
+    }
+
+    private void reset() {
+        Arrays.fill(docs, 0);
+        Arrays.fill(tokens, 0);
+        Arrays.fill(counts, 0);
+        trained.clear();
+        totalDocs = 0;
+        scanned = false;
+        writtenSeconds = 0;
+        writtenNanos = 0;
+    }
+}
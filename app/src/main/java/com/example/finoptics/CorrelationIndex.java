@@ -0,0 +1,147 @@
+package com.example.finoptics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Short-lived, in-memory correlation between capture sources.
+ *
+ * The same UPI payment usually shows up twice: as a bank SMS and as a
+ * GPay/PhonePe notification. Records are bucketed by exact amount in paise;
+ * a capture from a different source inside the window whose merchant does not
+ * contradict the first one is treated as the same payment and merged into the
+ * first record instead of becoming a second expense.
+ *
+ * Captures from the same source are never merged here: two SMS for the same
+ * amount are two payments, and a redelivered message is already dropped by
+ * its identity key in {@link DuplicateIndex}.
+ */
+final class CorrelationIndex {
+
+    // SMS and app notification for one payment land well within this
+    private static final long WINDOW_MS = 3 * 60 * 1000L;
+
+    static final class Record {
+        final String id;      // journal id == Expenses document id
+        final String uid;
+        final long time;
+        Transaction transaction;
+        boolean merged;
+
+        Record(String id, String uid, long time, Transaction transaction) {
+            this.id = id;
+            this.uid = uid;
+            this.time = time;
+            this.transaction = transaction;
+        }
+    }
+
+    // paise -> recent captures with exactly that amount
+    private final Map<Long, List<Record>> recent = new HashMap<>();
+
+    /** Unmerged record from another source for the same payment, or null. */
+    Record findCounterpart(String uid, Transaction t, long now) {
+        prune(now);
+
+        List<Record> candidates = recent.get(t.getAmountPaise());
+        if (candidates == null) return null;
+
+        for (Record r : candidates) {
+            if (r.merged || !r.uid.equals(uid)) continue;
+            if (sameSource(r.transaction.getSource(), t.getSource())) continue;
+            if (!compatible(r.transaction, t)) continue;
+            return r;
+        }
+        return null;
+    }
+
+    void record(String id, String uid, Transaction t, long now) {
+        Long key = t.getAmountPaise();
+        List<Record> list = recent.get(key);
+        if (list == null) {
+            list = new ArrayList<>();
+            recent.put(key, list);
+        }
+        list.add(new Record(id, uid, now, t));
+    }
+
+    /** Folds the second capture into the first, keeping the better data from each. */
+    static Transaction merge(Transaction first, Transaction second) {
+        Transaction named = merchantScore(second.getNote()) > merchantScore(first.getNote())
+                ? second : first;
+
+        Transaction merged = new Transaction(
+                first.getAmount(),
+                "Other".equals(first.getCategory()) ? second.getCategory() : first.getCategory(),
+                named.getNote(),
+                first.getTimestamp());
+        merged.setMerchant(named.getMerchant());
+        merged.setMerchantKey(named.getMerchantKey());
+        merged.setAmountPaise(first.getAmountPaise());
+        merged.setSource(first.getSource() + "+" + second.getSource());
+        return merged;
+    }
+
+    // ================= HELPERS =================
+
+    private void prune(long now) {
+        Iterator<List<Record>> lists = recent.values().iterator();
+        while (lists.hasNext()) {
+            List<Record> list = lists.next();
+            Iterator<Record> it = list.iterator();
+            while (it.hasNext()) {
+                if (now - it.next().time > WINDOW_MS) it.remove();
+            }
+            if (list.isEmpty()) lists.remove();
+        }
+    }
+
+    private static boolean sameSource(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * False only when both captures name a merchant and the names disagree:
+     * same registry key, one name inside the other, or either side unknown (or
+     * a bare phone-number VPA) all count as compatible.
+     */
+    static boolean compatible(Transaction a, Transaction b) {
+        if (a.getMerchantKey() != null && a.getMerchantKey().equals(b.getMerchantKey())) return true;
+
+        String x = merchantKey(a.getNote());
+        String y = merchantKey(b.getNote());
+        if (x.isEmpty() || y.isEmpty()) return true;
+        return x.contains(y) || y.contains(x);
+    }
+
+    // Lowercase letters and digits of the name, or of a VPA's handle; "" if it says nothing
+    private static String merchantKey(String merchant) {
+        if (merchantScore(merchant) == 0) return "";
+        int at = merchant.indexOf('@');
+        String name = at >= 0 ? merchant.substring(0, at) : merchant;
+
+        StringBuilder sb = new StringBuilder(name.length());
+        boolean letters = false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isLetterOrDigit(c)) continue;
+            letters |= Character.isLetter(c);
+            sb.append(Character.toLowerCase(c));
+        }
+        // 98xxxxxx10@ybl could be anyone
+        return at >= 0 && !letters ? "" : sb.toString();
+    }
+
+    // Named merchant > merchant with digits > raw VPA > unknown
+    private static int merchantScore(String merchant) {
+        if (merchant == null || merchant.isEmpty() || merchant.startsWith("Unknown")) return 0;
+        if (merchant.indexOf('@') >= 0) return 1;
+        for (int i = 0; i < merchant.length(); i++) {
+            if (Character.isDigit(merchant.charAt(i))) return 2;
+        }
+        return 3;
+    }
+}
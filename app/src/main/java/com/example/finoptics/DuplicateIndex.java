@@ -0,0 +1,274 @@
+package com.example.finoptics;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Local duplicate detector for captured transactions.
+ *
+ * A capture is a duplicate only if the same message was seen before: its
+ * identity key is the SMS sender + sent time + body, or the notification key +
+ * its text. Two genuine payments of the same amount to the same merchant are
+ * two messages, so both are kept. A 64-bit fingerprint of (amount in paise,
+ * normalized merchant, source, time bucket) is recorded alongside, but only as
+ * a hint that lets callers log a {@link #SIMILAR} capture.
+ *
+ * Lookups hit an in-memory map, so they are O(1) and work offline; the map is
+ * backed by a small append-only file (each record synced) and pruned to a
+ * rolling retention window.
+ */
+public final class DuplicateIndex {
+
+    private static final String TAG = "FinOptics_Dedup";
+    private static final String FILE_NAME = "dedup_index.bin";
+
+    /** Verdicts of {@link #checkAndRecord}. */
+    public static final int NEW = 0;
+    public static final int DUPLICATE = 1; // this exact message was captured before
+    public static final int SIMILAR = 2;   // another message, same amount/merchant/source recently
+
+    // Same hint fingerprint within the same or the previous bucket = SIMILAR
+    private static final long BUCKET_MS = 10 * 60 * 1000L;
+
+    // Fingerprints older than this are forgotten
+    static final long RETENTION_MS = 24 * 60 * 60 * 1000L;
+
+    // Prune in-process once the map grows past this
+    private static final int PRUNE_THRESHOLD = 2048;
+
+    private static DuplicateIndex instance;
+
+    private final File file;
+    private final Map<Long, Long> seen = new HashMap<>(); // identity key or hint -> capture time
+    private FileOutputStream out;
+    private final byte[] record = new byte[16];
+
+    DuplicateIndex(File file) {
+        this.file = file;
+        load();
+    }
+
+    public static synchronized DuplicateIndex get(Context context) {
+        if (instance == null) {
+            instance = new DuplicateIndex(
+                    new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    /**
+     * {@link #DUPLICATE} if the message with this identity key was already
+     * captured (nothing is recorded). Otherwise records it and returns
+     * {@link #SIMILAR} when a same-amount, same-merchant capture from this
+     * source happened in the last 10-20 minutes, else {@link #NEW}. Only
+     * DUPLICATE should be dropped.
+     */
+    public synchronized int checkAndRecord(long messageKey, double amount, String merchant,
+                                           String source, long timeMillis) {
+        if (seen.containsKey(messageKey)) return DUPLICATE;
+
+        long paise = Money.toPaise(amount);
+        String key = normalize(merchant);
+        long bucket = timeMillis / BUCKET_MS;
+
+        long hint = fingerprint(paise, key, source, bucket);
+        boolean similar = seen.containsKey(hint)
+                || seen.containsKey(fingerprint(paise, key, source, bucket - 1));
+
+        seen.put(messageKey, timeMillis);
+        seen.put(hint, timeMillis);
+        persist(messageKey, timeMillis);
+        persist(hint, timeMillis);
+        sync();
+
+        if (seen.size() > PRUNE_THRESHOLD) {
+            prune(System.currentTimeMillis() - RETENTION_MS);
+            rewrite();
+        }
+        return similar ? SIMILAR : NEW;
+    }
+
+    /**
+     * Records the first {@code n} identity keys with their message times and
+     * syncs once; keys already past the retention window are skipped.
+     */
+    public synchronized void recordAll(long[] messageKeys, long[] timesMillis, int n) {
+        long cutoff = System.currentTimeMillis() - RETENTION_MS;
+        boolean wrote = false;
+        for (int i = 0; i < n; i++) {
+            if (timesMillis[i] < cutoff || seen.containsKey(messageKeys[i])) continue;
+            seen.put(messageKeys[i], timesMillis[i]);
+            persist(messageKeys[i], timesMillis[i]);
+            wrote = true;
+        }
+        if (wrote) sync();
+    }
+
+    /** True if the message with this identity key was captured; records nothing. */
+    public synchronized boolean contains(long messageKey) {
+        return seen.containsKey(messageKey);
+    }
+
+    // ================= MESSAGE IDENTITY =================
+
+    /** Identity of an SMS: originating address, service-centre timestamp and body. */
+    public static long smsKey(String address, long sentMillis, String body) {
+        long h = hash(0xcbf29ce484222325L, "sms");
+        h = hash(h, address);
+        h = mix(h, sentMillis);
+        return hash(h, body);
+    }
+
+    /**
+     * Identity of a posted notification: its StatusBarNotification key and the
+     * text we parse. Post time is left out on purpose: an app updating or
+     * re-posting the same alert gets a new one, but says the same thing.
+     */
+    public static long notificationKey(String key, String content) {
+        long h = hash(0xcbf29ce484222325L, "notification");
+        h = hash(h, key);
+        return hash(h, content);
+    }
+
+    /** Identity of text that arrives without an envelope: the text itself. */
+    public static long textKey(String source, String content) {
+        return hash(hash(0xcbf29ce484222325L, source), content);
+    }
+
+    // ================= FINGERPRINT =================
+
+    // FNV-1a over the fields; no intermediate strings
+    static long fingerprint(long paise, String merchant, String source, long bucket) {
+        long h = 0xcbf29ce484222325L;
+        h = mix(h, paise);
+        for (int i = 0; i < merchant.length(); i++) {
+            h = (h ^ merchant.charAt(i)) * 0x100000001b3L;
+        }
+        h = (h ^ '|') * 0x100000001b3L;
+        for (int i = 0; i < source.length(); i++) {
+            h = (h ^ source.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(h, bucket);
+    }
+
+    // Field followed by a separator, so ("ab", "c") and ("a", "bc") differ
+    private static long hash(long h, String s) {
+        if (s != null) {
+            for (int i = 0; i < s.length(); i++) {
+                h = (h ^ s.charAt(i)) * 0x100000001b3L;
+            }
+        }
+        return (h ^ 0x1f) * 0x100000001b3L;
+    }
+
+    private static long mix(long h, long value) {
+        for (int i = 0; i < 8; i++) {
+            h = (h ^ (value & 0xff)) * 0x100000001b3L;
+            value >>>= 8;
+        }
+        return h;
+    }
+
+    // Lowercase letters and digits only: "Zomato Ltd." and "zomato ltd" agree
+    private static String normalize(String merchant) {
+        if (merchant == null) return "";
+        StringBuilder sb = new StringBuilder(merchant.length());
+        for (int i = 0; i < merchant.length(); i++) {
+            char c = merchant.charAt(i);
+            if (Character.isLetterOrDigit(c)) sb.append(Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+
+    // ================= PERSISTENCE =================
+
+    private void load() {
+        long cutoff = System.currentTimeMillis() - RETENTION_MS;
+
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    long fp = in.readLong();
+                    long time = in.readLong();
+                    if (time >= cutoff) seen.put(fp, time);
+                }
+            } catch (EOFException done) {
+                // End of file (or a torn final record)
+            } catch (IOException e) {
+                Log.e(TAG, "Dedup index load failed", e);
+            }
+        }
+
+        prune(cutoff);
+        rewrite();
+    }
+
+    private void prune(long cutoff) {
+        Iterator<Map.Entry<Long, Long>> it = seen.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue() < cutoff) it.remove();
+        }
+    }
+
+    // Drops expired records from disk by rewriting the live set
+    private void rewrite() {
+        closeAppender();
+        try (FileOutputStream fos = new FileOutputStream(file, false)) {
+            DataOutputStream rewritten = new DataOutputStream(new BufferedOutputStream(fos));
+            for (Map.Entry<Long, Long> e : seen.entrySet()) {
+                rewritten.writeLong(e.getKey());
+                rewritten.writeLong(e.getValue());
+            }
+            rewritten.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Dedup index rewrite failed", e);
+        }
+    }
+
+    private void closeAppender() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException ignored) {}
+        out = null;
+    }
+
+    // One 16-byte record per write, so a crash can tear at most the last one
+    private void persist(long fingerprint, long timeMillis) {
+        for (int i = 0; i < 8; i++) {
+            record[i] = (byte) (fingerprint >>> (56 - 8 * i));
+            record[8 + i] = (byte) (timeMillis >>> (56 - 8 * i));
+        }
+        try {
+            if (out == null) out = new FileOutputStream(file, true);
+            out.write(record);
+        } catch (IOException e) {
+            Log.e(TAG, "Dedup index append failed", e);
+        }
+    }
+
+    // Records must survive the process (and power) dying right after a capture
+    private void sync() {
+        if (out == null) return;
+        try {
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Dedup index sync failed", e);
+        }
+    }
+}
@@ -9,28 +9,33 @@ import java.util.Locale;
 public class Expense {
 
     private String category;     // required
-    private int amount;          // required
+    private long amountPaise;    // required; read from amountPaise or legacy amount
     private String note;         // required, main description
     private Timestamp timestamp; // required (Firestore)
+    private String merchant;     // optional, canonical merchant name
+    private String merchantKey;  // optional, MerchantRegistry canonical key
 
     // 🔴 Required by Firestore
     public Expense() {}
 
     // Optional constructor for manual creation
-    public Expense(String category, int amount, String note, Timestamp timestamp) {
+    public Expense(String category, long amountPaise, String note, Timestamp timestamp) {
         this.category = category;
-        this.amount = amount;
+        this.amountPaise = amountPaise;
         this.note = note;
         this.timestamp = timestamp;
     }
 
     // ---------- 🔥 FIRESTORE SAFE SETTERS (ADDED) ----------
 
-    // Firestore sends numbers as Long
-    public void setAmount(Long amount) {
-        if (amount != null) {
-            this.amount = amount.intValue();
-        }
+    // Legacy rupee field: Firestore widens Long and Double alike to double
+    public void setAmount(double amount) {
+        this.amountPaise = Money.toPaise(amount);
+    }
+
+    // Exact field written by current clients; consistent with amount when both exist
+    public void setAmountPaise(long amountPaise) {
+        this.amountPaise = amountPaise;
     }
 
     // Optional: defensive setters (future-proof)
@@ -46,14 +51,26 @@ public class Expense {
         this.timestamp = timestamp;
     }
 
+    public void setMerchant(String merchant) {
+        this.merchant = merchant;
+    }
+
+    public void setMerchantKey(String merchantKey) {
+        this.merchantKey = merchantKey;
+    }
+
     // ---------- Getters (Firestore uses these) ----------
 
     public String getCategory() {
         return category;
     }
 
-    public int getAmount() {
-        return amount;
+    public double getAmount() {
+        return Money.toRupees(amountPaise);
+    }
+
+    public long getAmountPaise() {
+        return amountPaise;
     }
 
     public String getNote() {
@@ -64,6 +81,14 @@ public class Expense {
         return timestamp;
     }
 
+    public String getMerchant() {
+        return merchant;
+    }
+
+    public String getMerchantKey() {
+        return merchantKey;
+    }
+
     // ---------- Derived helpers for UI ----------
 
     /** Returns date as "MMMM dd, yyyy" e.g., March 10, 2026 */
@@ -0,0 +1,287 @@
+package com.example.finoptics;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local SQLite mirror of Users/{uid}/Expenses for reads.
+ *
+ * One snapshot listener keeps the table in step with Firestore (which stays
+ * the system of record); History and the Home list page through it newest
+ * first, and range sums run against B-tree indexes on timestamp,
+ * (category, timestamp) and merchant instead of pulling the collection.
+ * Installed as the {@link AggregationService}, so the rollup fallbacks of
+ * Home and Insights are answered here too. Works offline from whatever was
+ * last synced.
+ *
+ * Snapshots are applied on a single writer thread; queries run on a reader
+ * pool and wait for the first snapshot of a fresh account before answering.
+ */
+public final class ExpenseMirror extends SQLiteOpenHelper implements AggregationService {
+
+    private static final String TAG = "FinOptics_Mirror";
+    private static final String DB_NAME = "expense_mirror.db";
+    private static final int DB_VERSION = 2; // 2: merchant key replaces the device-local id
+
+    // A fresh account waits this long for its first snapshot before reading anyway
+    private static final long PRIME_TIMEOUT_MS = 10_000;
+
+    /** Called on the main thread after each applied snapshot. */
+    public interface ChangeListener {
+        void onExpensesChanged();
+    }
+
+    /** A read to run off the main thread. */
+    public interface Read<T> {
+        T run(ExpenseMirror mirror) throws Exception;
+    }
+
+    /** Delivered on the main thread; value is null if the read failed. */
+    public interface Delivery<T> {
+        void onResult(T value);
+    }
+
+    private static ExpenseMirror instance;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final ExecutorService readers = Executors.newFixedThreadPool(2);
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    private String uid;
+    private ListenerRegistration registration;
+    private volatile CountDownLatch primed = new CountDownLatch(0);
+    private boolean firstSnapshot;
+
+    private ExpenseMirror(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+        // Readers don't block behind the writer
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    public static synchronized ExpenseMirror get(Context context) {
+        if (instance == null) instance = new ExpenseMirror(context.getApplicationContext());
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE expenses ("
+                + "id TEXT NOT NULL, "
+                + "uid TEXT NOT NULL, "
+                + "amount_paise INTEGER NOT NULL, "
+                + "category TEXT, "
+                + "note TEXT, "
+                + "merchant TEXT, "
+                + "merchant_key TEXT, "
+                + "source TEXT, "
+                + "ts INTEGER NOT NULL, "
+                + "PRIMARY KEY (uid, id))");
+        db.execSQL("CREATE INDEX idx_expenses_ts ON expenses (uid, ts)");
+        db.execSQL("CREATE INDEX idx_expenses_category_ts ON expenses (uid, category, ts)");
+        db.execSQL("CREATE INDEX idx_expenses_merchant ON expenses (uid, merchant_key)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // A mirror can always be rebuilt from Firestore
+        db.execSQL("DROP TABLE IF EXISTS expenses");
+        onCreate(db);
+    }
+
+    // ================= SYNC =================
+
+    /** Starts (or keeps) mirroring this user's expenses. Idempotent. */
+    public synchronized void attach(String uid) {
+        if (uid == null || uid.equals(this.uid)) return;
+        if (registration != null) registration.remove();
+
+        this.uid = uid;
+        firstSnapshot = true;
+        // Rows from an earlier session answer immediately; an empty mirror waits
+        primed = new CountDownLatch(hasRows(uid) ? 0 : 1);
+
+        registration = FirebaseFirestore.getInstance()
+                .collection("Users").document(uid).collection("Expenses")
+                .addSnapshotListener(writer, (snapshot, error) -> {
+                    if (error != null || snapshot == null) {
+                        Log.e(TAG, "Mirror listener failed", error);
+                        return;
+                    }
+                    apply(uid, snapshot);
+                });
+    }
+
+    public void addListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Writer thread only
+    private void apply(String forUid, QuerySnapshot snapshot) {
+        boolean full;
+        synchronized (this) {
+            if (!forUid.equals(uid)) return; // account switched meanwhile
+            full = firstSnapshot;
+            firstSnapshot = false;
+        }
+
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement upsert = db.compileStatement("INSERT OR REPLACE INTO expenses "
+                + "(id, uid, amount_paise, category, note, merchant, merchant_key, source, ts) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        SQLiteStatement delete = db.compileStatement("DELETE FROM expenses WHERE uid = ? AND id = ?");
+
+        db.beginTransaction();
+        try {
+            if (full) {
+                // First snapshot is the complete set; drop anything deleted while we were away
+                db.delete("expenses", "uid = ?", new String[]{forUid});
+            }
+            for (DocumentChange change : snapshot.getDocumentChanges()) {
+                DocumentSnapshot doc = change.getDocument();
+                if (change.getType() == DocumentChange.Type.REMOVED) {
+                    delete.bindString(1, forUid);
+                    delete.bindString(2, doc.getId());
+                    delete.executeUpdateDelete();
+                } else {
+                    bind(upsert, forUid, doc);
+                    upsert.executeInsert();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            upsert.close();
+            delete.close();
+        }
+
+        primed.countDown();
+        main.post(() -> {
+            for (ChangeListener l : listeners) l.onExpensesChanged();
+        });
+    }
+
+    private static void bind(SQLiteStatement s, String uid, DocumentSnapshot doc) {
+        s.clearBindings();
+        s.bindString(1, doc.getId());
+        s.bindString(2, uid);
+        s.bindLong(3, Money.paiseOf(doc));
+        bindNullable(s, 4, doc.getString("category"));
+        bindNullable(s, 5, doc.getString("note"));
+        bindNullable(s, 6, doc.getString("merchant"));
+        bindNullable(s, 7, doc.getString("merchantKey"));
+        bindNullable(s, 8, doc.getString("source"));
+        s.bindLong(9, Timestamps.millisOf(doc));
+    }
+
+    private static void bindNullable(SQLiteStatement s, int index, String value) {
+        if (value == null) s.bindNull(index);
+        else s.bindString(index, value);
+    }
+
+    private boolean hasRows(String uid) {
+        try (Cursor c = getReadableDatabase().rawQuery(
+                "SELECT 1 FROM expenses WHERE uid = ? LIMIT 1", new String[]{uid})) {
+            return c.moveToNext();
+        }
+    }
+
+    // ================= READS =================
+
+    /**
+     * Runs a read on the reader pool once the mirror is primed and delivers
+     * the value on the main thread.
+     */
+    @MainThread
+    public <T> void read(String uid, Read<T> read, Delivery<T> result) {
+        attach(uid);
+        CountDownLatch ready = primed;
+        readers.execute(() -> {
+            T value = null;
+            try {
+                if (!ready.await(PRIME_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    Log.w(TAG, "Mirror not primed yet; answering from what is there");
+                }
+                value = read.run(this);
+            } catch (Exception e) {
+                Log.e(TAG, "Mirror read failed", e);
+            }
+            T delivered = value;
+            main.post(() -> result.onResult(delivered));
+        });
+    }
+
+    /** Sum and count from the timestamp or (category, timestamp) index. */
+    @Override
+    @MainThread
+    public void aggregate(String uid, long fromMs, long toMs, @Nullable String category,
+                          Callback callback) {
+        read(uid, mirror -> mirror.sum(uid, fromMs, toMs, category), callback::onResult);
+    }
+
+    @WorkerThread
+    public AggregationService.Result sum(String uid, long fromMs, long toMs, @Nullable String category) {
+        String sql = "SELECT COALESCE(SUM(amount_paise), 0), COUNT(*) FROM expenses "
+                + "WHERE uid = ? AND ts >= ? AND ts < ?";
+        String[] args = {uid, String.valueOf(fromMs), String.valueOf(toMs)};
+        if (category != null) {
+            sql += " AND category = ?";
+            args = new String[]{uid, String.valueOf(fromMs), String.valueOf(toMs), category};
+        }
+
+        try (Cursor c = getReadableDatabase().rawQuery(sql, args)) {
+            return c.moveToNext()
+                    ? new AggregationService.Result(c.getLong(0), c.getLong(1))
+                    : new AggregationService.Result(0, 0);
+        }
+    }
+
+    /** Newest first, at most {@code limit} (negative for all). */
+    @WorkerThread
+    public List<Expense> expenses(String uid, int limit) {
+        List<Expense> expenses = new ArrayList<>();
+        try (Cursor c = getReadableDatabase().rawQuery(
+                "SELECT category, amount_paise, note, ts, merchant, merchant_key FROM expenses "
+                        + "WHERE uid = ? ORDER BY ts DESC LIMIT ?",
+                new String[]{uid, String.valueOf(limit)})) {
+            while (c.moveToNext()) {
+                Expense e = new Expense(c.getString(0), c.getLong(1), c.getString(2),
+                        new Timestamp(new Date(c.getLong(3))));
+                e.setMerchant(c.getString(4));
+                e.setMerchantKey(c.getString(5));
+                expenses.add(e);
+            }
+        }
+        return expenses;
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.finoptics;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces auto-captured transactions (SMS, notifications, parser) into a
+ * single Firestore WriteBatch per short window. Banks tend to send bursts of
+ * messages on salary/EMI days; this turns N round trips into one commit, and
+ * runs anomaly detection once per batch instead of once per expense.
+ *
+ * Every transaction is written to the {@link TransactionJournal} before it is
+ * queued, and acknowledged there once its batch commits. A capture that the
+ * {@link CorrelationIndex} recognises as the other half of an earlier one
+ * (SMS + UPI notification) is merged into it under the same document id.
+ *
+ * Each batch also carries the {@link Rollups} increments for its expenses.
+ * Ids that may already be stored (replays, merges) are read first so that
+ * overwriting one moves its contribution instead of counting it twice.
+ */
+public final class ExpenseWriteQueue {
+
+    private static final String TAG = "FinOptics_WriteQueue";
+
+    // How long to wait for more messages before committing
+    private static final long FLUSH_WINDOW_MS = 1500;
+
+    // Firestore caps a batch at 500 writes
+    private static final int MAX_BATCH_SIZE = 400;
+
+    // Retry backoff: 2s, 4s, 8s ... capped at 1 min; after that the journal
+    // keeps the entries for the next process start
+    private static final long RETRY_BASE_MS = 2000;
+    private static final long RETRY_MAX_MS = 60_000;
+    private static final int MAX_ATTEMPTS = 6;
+
+    private static ExpenseWriteQueue instance;
+
+    private final TransactionJournal journal;
+    private final CorrelationIndex correlation = new CorrelationIndex();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    // uid -> journaled transactions waiting for the next flush
+    private final Map<String, List<TransactionJournal.Entry>> pending = new HashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    // Ids whose document may already exist: replayed or merged entries (few; never pruned,
+    // since a merge can land while the first version's batch is still in flight)
+    private final Set<String> maybeStored = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private ExpenseWriteQueue(TransactionJournal journal) {
+        this.journal = journal;
+    }
+
+    public static synchronized ExpenseWriteQueue get(Context context) {
+        if (instance == null) {
+            instance = new ExpenseWriteQueue(TransactionJournal.get(context));
+            // Anything the previous process journaled but never committed
+            for (TransactionJournal.Entry entry : instance.journal.replay()) {
+                // The batch may have committed before the process died
+                instance.maybeStored.add(entry.id);
+                instance.queue(entry);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Durably journals the transaction, then queues it for the next batch.
+     * Returns once the entry is on disk; the Firestore commit happens later.
+     */
+    public synchronized void enqueue(String uid, Transaction transaction) {
+        long now = System.currentTimeMillis();
+
+        CorrelationIndex.Record counterpart = correlation.findCounterpart(uid, transaction, now);
+        if (counterpart != null) {
+            // Same payment seen from another source: rewrite the first record in place
+            Transaction merged = CorrelationIndex.merge(counterpart.transaction, transaction);
+            counterpart.transaction = merged;
+            counterpart.merged = true;
+            Log.d(TAG, "🔗 Merged " + transaction.getSource() + " into " + counterpart.id);
+            maybeStored.add(counterpart.id);
+            queue(journaled(counterpart.id, uid, merged));
+            return;
+        }
+
+        String id = TransactionJournal.newId();
+        correlation.record(id, uid, transaction, now);
+        queue(journaled(id, uid, transaction));
+    }
+
+    private TransactionJournal.Entry journaled(String id, String uid, Transaction transaction) {
+        try {
+            return journal.append(id, uid, transaction);
+        } catch (IOException e) {
+            // Still try to commit; we just lose crash safety for this one
+            Log.e(TAG, "Journal append failed", e);
+            return new TransactionJournal.Entry(id, uid, transaction);
+        }
+    }
+
+    private synchronized void queue(TransactionJournal.Entry entry) {
+        List<TransactionJournal.Entry> list = pending.get(entry.uid);
+        if (list == null) {
+            list = new ArrayList<>();
+            pending.put(entry.uid, list);
+        }
+
+        // A merge of a still-pending entry replaces it; otherwise it overwrites
+        // the committed document on the next flush
+        int existing = -1;
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).id.equals(entry.id)) {
+                existing = i;
+                break;
+            }
+        }
+        if (existing >= 0) {
+            list.set(existing, entry);
+        } else {
+            list.add(entry);
+        }
+
+        if (list.size() >= MAX_BATCH_SIZE) {
+            if (scheduledFlush != null) scheduledFlush.cancel(false);
+            scheduledFlush = null;
+            scheduler.execute(this::flush);
+        } else if (scheduledFlush == null) {
+            scheduledFlush = scheduler.schedule(this::flush, FLUSH_WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush() {
+        Map<String, List<TransactionJournal.Entry>> drained;
+        synchronized (this) {
+            scheduledFlush = null;
+            if (pending.isEmpty()) return;
+            drained = new HashMap<>(pending);
+            pending.clear();
+        }
+
+        for (Map.Entry<String, List<TransactionJournal.Entry>> e : drained.entrySet()) {
+            List<TransactionJournal.Entry> all = e.getValue();
+            for (int from = 0; from < all.size(); from += MAX_BATCH_SIZE) {
+                List<TransactionJournal.Entry> chunk =
+                        new ArrayList<>(all.subList(from, Math.min(all.size(), from + MAX_BATCH_SIZE)));
+                commit(e.getKey(), chunk, 1);
+            }
+        }
+    }
+
+    private void commit(String uid, List<TransactionJournal.Entry> entries, int attempt) {
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        CollectionReference expenses = db.collection("Users").document(uid).collection("Expenses");
+
+        List<String> stored = new ArrayList<>();
+        for (TransactionJournal.Entry entry : entries) {
+            if (maybeStored.contains(entry.id)) stored.add(entry.id);
+        }
+        Map<String, DocumentSnapshot> previous = Rollups.existing(expenses, stored);
+
+        WriteBatch batch = db.batch();
+        Rollups.Delta rollups = new Rollups.Delta();
+        Set<String> categories = new LinkedHashSet<>();
+
+        for (TransactionJournal.Entry entry : entries) {
+            // Journal id as document id: replays and merges overwrite instead of duplicating
+            batch.set(expenses.document(entry.id), entry.transaction);
+            rollups.add(previous.get(entry.id), -1).add(entry.transaction, 1);
+            categories.add(entry.transaction.getCategory());
+        }
+
+        if (entries.size() + rollups.documents() > Rollups.MAX_BATCH_WRITES && entries.size() > 1) {
+            // Spread over too many days for one batch
+            int half = entries.size() / 2;
+            commit(uid, new ArrayList<>(entries.subList(0, half)), attempt);
+            commit(uid, new ArrayList<>(entries.subList(half, entries.size())), attempt);
+            return;
+        }
+        int size = entries.size();
+        rollups.commit(batch, uid)
+                .addOnSuccessListener(v -> {
+                    Log.d(TAG, "✅ Batch committed: " + size + " txn(s)");
+                    journal.ack(entries);
+                    // Post-commit work runs once per batch
+                    AnomalyDetector.check(uid, categories);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "❌ Batch commit failed (" + size + " txn(s)), attempt " + attempt, e);
+                    if (attempt >= MAX_ATTEMPTS) return;
+
+                    long delay = Math.min(RETRY_MAX_MS, RETRY_BASE_MS << (attempt - 1));
+                    scheduler.schedule(() -> commit(uid, entries, attempt + 1),
+                            delay, TimeUnit.MILLISECONDS);
+                });
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.finoptics;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.AggregateField;
+import com.google.firebase.firestore.AggregateSource;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+
+import java.util.Date;
+
+/**
+ * {@link AggregationService} backed by Firestore aggregation queries: the
+ * server evaluates sum() and count() over the index and returns one small
+ * result, billed per 1000 index entries instead of per document.
+ *
+ * Sums the rupee {@code amount} field, which every expense carries (legacy
+ * ones have nothing else), and rounds the total to paise once.
+ */
+public final class FirestoreAggregationService implements AggregationService {
+
+    private static final String TAG = "FinOptics_Aggregation";
+
+    private static final AggregateField SUM = AggregateField.sum(Money.FIELD_RUPEES);
+    private static final AggregateField COUNT = AggregateField.count();
+
+    @Override
+    public void aggregate(String uid, long fromMs, long toMs, @Nullable String category,
+                          Callback callback) {
+        Query query = FirebaseFirestore.getInstance()
+                .collection("Users").document(uid).collection("Expenses")
+                .whereGreaterThanOrEqualTo("timestamp", new Timestamp(new Date(fromMs)));
+        if (toMs != Long.MAX_VALUE) {
+            query = query.whereLessThan("timestamp", new Timestamp(new Date(toMs)));
+        }
+        if (category != null) query = query.whereEqualTo("category", category);
+
+        // Aggregations always run on the server; offline they fail fast
+        query.aggregate(SUM, COUNT)
+                .get(AggregateSource.SERVER)
+                .addOnSuccessListener(snapshot -> {
+                    Object sum = snapshot.get(SUM);
+                    double rupees = sum instanceof Number ? ((Number) sum).doubleValue() : 0;
+                    callback.onResult(new Result(Money.toPaise(rupees), snapshot.getCount()));
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Aggregation failed", e);
+                    callback.onResult(null);
+                });
+    }
+}
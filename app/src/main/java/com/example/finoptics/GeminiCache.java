@@ -0,0 +1,182 @@
+package com.example.finoptics;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Two-level cache for cloud categorization results.
+ *
+ * Level 1 is an access-ordered LRU in memory; level 2 is one small file per
+ * entry under cacheDir. Both are keyed by a normalized note (lowercase,
+ * digits folded to '#', whitespace collapsed), so "Chai with team 120" and
+ * "chai with team 80" share an entry. Entries expire after {@link #TTL_MS};
+ * the disk level is trimmed oldest-first once it grows past its bound.
+ */
+public final class GeminiCache {
+
+    private static final String TAG = "FinOptics_GeminiCache";
+    private static final String DIR_NAME = "gemini_cache";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final long TTL_MS = 30L * 24 * 60 * 60 * 1000;
+    private static final int MEMORY_ENTRIES = 128;
+    private static final int DISK_ENTRIES = 1000;
+
+    private static GeminiCache instance;
+
+    public static final class Hit {
+        public final String category;
+        public final long amountPaise; // amount the cloud read from the note, 0 if none
+        final long savedAt;
+
+        Hit(String category, long amountPaise, long savedAt) {
+            this.category = category;
+            this.amountPaise = amountPaise;
+            this.savedAt = savedAt;
+        }
+    }
+
+    private final File dir;
+    private final Map<String, Hit> memory = new LinkedHashMap<String, Hit>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Hit> eldest) {
+            return size() > MEMORY_ENTRIES;
+        }
+    };
+    private int diskWrites = 0;
+
+    private GeminiCache(File dir) {
+        this.dir = dir;
+    }
+
+    public static synchronized GeminiCache get(Context context) {
+        if (instance == null) {
+            instance = new GeminiCache(new File(context.getApplicationContext().getCacheDir(), DIR_NAME));
+        }
+        return instance;
+    }
+
+    /** Cached result for the note, or null on a miss or an expired entry. */
+    public synchronized Hit lookup(String note) {
+        String key = normalize(note);
+        if (key.isEmpty()) return null;
+        long now = System.currentTimeMillis();
+
+        Hit hit = memory.get(key);
+        if (hit == null) {
+            hit = readDisk(key);
+            if (hit != null) memory.put(key, hit);
+        }
+        if (hit == null) return null;
+
+        if (now - hit.savedAt > TTL_MS) {
+            memory.remove(key);
+            fileFor(key).delete();
+            return null;
+        }
+        return hit;
+    }
+
+    /** Stores a cloud result. Does file I/O: call from a background thread. */
+    public synchronized void put(String note, String category, long amountPaise) {
+        String key = normalize(note);
+        if (key.isEmpty() || category == null) return;
+
+        Hit hit = new Hit(category, amountPaise, System.currentTimeMillis());
+        memory.put(key, hit);
+        writeDisk(key, hit);
+
+        // Trimming lists the directory, so only check every so often
+        if (++diskWrites % 50 == 0) trimDisk();
+    }
+
+    // ================= KEY =================
+
+    static String normalize(String note) {
+        if (note == null) return "";
+        StringBuilder sb = new StringBuilder(note.length());
+        boolean space = false;
+        for (int i = 0; i < note.length(); i++) {
+            char c = note.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = sb.length() > 0;
+                continue;
+            }
+            if (space) {
+                sb.append(' ');
+                space = false;
+            }
+            if (Character.isDigit(c)) {
+                // Whole number -> one '#', "1,250.50" included
+                if (sb.length() == 0 || sb.charAt(sb.length() - 1) != '#') sb.append('#');
+            } else if ((c == ',' || c == '.') && sb.length() > 0 && sb.charAt(sb.length() - 1) == '#') {
+                // separator inside a number
+            } else {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    // ================= DISK LEVEL =================
+
+    private File fileFor(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) h = (h ^ key.charAt(i)) * 0x100000001b3L;
+        return new File(dir, Long.toHexString(h));
+    }
+
+    // File: key \n category \n paise \n savedAt
+    private Hit readDisk(String key) {
+        File file = fileFor(key);
+        if (!file.exists()) return null;
+
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), UTF8))) {
+            if (!key.equals(in.readLine())) return null; // hash collision
+            String category = in.readLine();
+            long paise = Long.parseLong(in.readLine());
+            long savedAt = Long.parseLong(in.readLine());
+            return category != null ? new Hit(category, paise, savedAt) : null;
+        } catch (IOException | RuntimeException e) {
+            file.delete();
+            return null;
+        }
+    }
+
+    private void writeDisk(String key, Hit hit) {
+        if (!dir.exists() && !dir.mkdirs()) return;
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(fileFor(key), false), UTF8)) {
+            out.write(key + "\n" + hit.category + "\n" + hit.amountPaise + "\n" + hit.savedAt + "\n");
+        } catch (IOException e) {
+            Log.w(TAG, "Cache write failed", e);
+        }
+    }
+
+    private void trimDisk() {
+        File[] files = dir.listFiles();
+        if (files == null || files.length <= DISK_ENTRIES) return;
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (int i = 0; i < files.length - DISK_ENTRIES; i++) files[i].delete();
+    }
+}
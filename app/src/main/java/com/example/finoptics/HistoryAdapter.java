@@ -149,7 +149,7 @@ public class HistoryAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
                     expense.getCategory() != null ? expense.getCategory() : ""
             );
 
-            tvAmount.setText("₹" + expense.getAmount());
+            tvAmount.setText(Money.format(expense.getAmountPaise()));
 
             // Convert Firestore timestamp → readable time
             Timestamp ts = expense.getTimestamp();
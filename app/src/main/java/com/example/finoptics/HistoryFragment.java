@@ -16,9 +16,6 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.Query;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -33,14 +30,15 @@ public class HistoryFragment extends Fragment {
 
     private HistoryAdapter historyAdapter;
 
-    // 🔹 Raw data from Firestore
+    // 🔹 Raw data from the local mirror, newest first
     private final List<Expense> allExpenses = new ArrayList<>();
 
     // 🔹 Grouped data
     private List<ExpenseGroup> groupedExpenses = new ArrayList<>();
 
-    private FirebaseFirestore firestore;
     private FirebaseAuth auth;
+    private ExpenseMirror mirror;
+    private final ExpenseMirror.ChangeListener mirrorListener = this::loadFromMirror;
 
     public HistoryFragment() {}
 
@@ -62,10 +60,12 @@ public class HistoryFragment extends Fragment {
         historyAdapter = new HistoryAdapter(groupedExpenses);
         rvHistory.setAdapter(historyAdapter);
 
-        firestore = FirebaseFirestore.getInstance();
         auth = FirebaseAuth.getInstance();
+        mirror = ExpenseMirror.get(requireContext());
 
-        listenToFirestoreExpenses();
+        // Reloaded whenever a Firestore snapshot lands in the mirror
+        mirror.addListener(mirrorListener);
+        loadFromMirror();
 
         // 🔍 Live Search
         etSearchHistory.addTextChangedListener(new TextWatcher() {
@@ -83,30 +83,28 @@ public class HistoryFragment extends Fragment {
         });
     }
 
-    // ================= FIRESTORE =================
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        mirror.removeListener(mirrorListener);
+    }
+
+    // ================= MIRROR =================
 
-    private void listenToFirestoreExpenses() {
+    private void loadFromMirror() {
         if (auth.getCurrentUser() == null) return;
 
         String uid = auth.getCurrentUser().getUid();
 
-        firestore.collection("Users")
-                .document(uid)
-                .collection("Expenses")
-                .orderBy("timestamp", Query.Direction.DESCENDING)
-                .addSnapshotListener((snapshots, error) -> {
-                    if (error != null || snapshots == null) return;
+        mirror.read(uid, m -> m.expenses(uid, -1), expenses -> {
+            if (expenses == null || getView() == null) return;
 
-                    allExpenses.clear();
+            allExpenses.clear();
+            allExpenses.addAll(expenses);
 
-                    for (QueryDocumentSnapshot doc : snapshots) {
-                        Expense expense = doc.toObject(Expense.class);
-                        allExpenses.add(expense);
-                    }
-
-                    groupedExpenses = groupExpensesByMonth(allExpenses);
-                    historyAdapter.updateList(groupedExpenses);
-                });
+            // Keeps whatever search is typed in
+            filterExpenses(etSearchHistory.getText().toString());
+        });
     }
 
     // ================= GROUP BY MONTH =================
@@ -152,7 +150,7 @@ public class HistoryFragment extends Fragment {
             String content = (
                     e.getNote() + " " +
                             e.getCategory() + " " +
-                            e.getAmount()
+                            (e.getAmountPaise() / 100)
             ).toLowerCase();
 
             boolean matches = true;
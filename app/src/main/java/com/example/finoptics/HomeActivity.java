@@ -1,12 +1,14 @@
 package com.example.finoptics;
 
 import android.Manifest;
+import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
 import android.provider.Settings;
 import android.util.Log;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
@@ -45,6 +47,8 @@ public class HomeActivity extends AppCompatActivity {
                         new String[]{Manifest.permission.RECEIVE_SMS, Manifest.permission.READ_SMS},
                         PERMISSION_REQUEST_CODE
                 );
+            } else {
+                startSmsBackfill();
             }
         }
 
@@ -55,6 +59,24 @@ public class HomeActivity extends AppCompatActivity {
             Log.d("FinOptics", "Please enable Notification Access for FinOptics");
         }
 
+        // Re-queue any captured transactions the last process never committed
+        Context appContext = getApplicationContext();
+        IngestionExecutor.execute(() -> ExpenseWriteQueue.get(appContext));
+
+        // Send auto-captured "Other" expenses to the cloud classifier in bulk
+        BatchCategorizer.start(this);
+
+        // Screens read expenses and range sums from the local mirror
+        String uid = getSharedPreferences("FinOptics", MODE_PRIVATE).getString("uid", null);
+        ExpenseMirror.get(this).attach(uid);
+        Aggregations.useMirror(this);
+
+        // Accounts from before rollups get them computed once from history
+        Rollups.ensureBuilt(this, uid);
+
+        // Teach the on-device classifier whatever was categorized since last time
+        CategoryClassifier.syncFromHistory(this, uid);
+
         BottomNavigationView bottomNav = findViewById(R.id.bottom_navigation);
 
         // Set HomeFragment as the default when app opens
@@ -103,9 +125,31 @@ public class HomeActivity extends AppCompatActivity {
             } else {
                 Log.e("FinOptics", "❌ Some permissions denied (SMS/Notifications)");
             }
+
+            if (checkSelfPermission(Manifest.permission.READ_SMS) == PackageManager.PERMISSION_GRANTED) {
+                startSmsBackfill();
+            }
         }
     }
 
+    // 📥 Import bank SMS already in the inbox (runs once, resumes if interrupted)
+    private void startSmsBackfill() {
+        SmsBackfillImporter.start(this, new SmsBackfillImporter.ProgressListener() {
+            @Override
+            public void onProgress(int scanned, int total, int imported) {
+                Log.d("FinOptics", "Backfill " + scanned + "/" + total + " → " + imported + " imported");
+            }
+
+            @Override
+            public void onComplete(int imported) {
+                if (imported > 0) {
+                    Toast.makeText(HomeActivity.this,
+                            "Imported " + imported + " past transactions", Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+    }
+
     // ✅ Check if NotificationListener is enabled
     private boolean isNotificationServiceEnabled() {
         String pkgName = getPackageName();
@@ -28,9 +28,7 @@ import java.util.Calendar;
 import java.util.List;
 
 // 🔹 NEW imports (safe)
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import okhttp3.RequestBody;
 
 
 import android.util.Log;
@@ -47,7 +45,9 @@ public class HomeFragment extends Fragment {
 
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
-    private ListenerRegistration monthlyStatsListener, recentTransactionsListener, todayListener, alertListener;
+    private ListenerRegistration monthlyStatsListener, todayListener, alertListener;
+    private ExpenseMirror mirror;
+    private ExpenseMirror.ChangeListener recentTransactionsListener;
 
     private double monthlyBudget = 0;
 
@@ -65,6 +65,8 @@ public class HomeFragment extends Fragment {
     // Near the top of HomeFragment.java
 
 
+    private static final int REQUEST_IMPORT_CSV = 201;
+
     public HomeFragment() {}
 
     @Override
@@ -117,6 +119,7 @@ public class HomeFragment extends Fragment {
 
         btnLogout.setOnClickListener(v -> {
             mAuth.signOut();
+            IdTokenProvider.get().invalidate();
             startActivity(new Intent(getActivity(), LoginActivity.class));
             if (getActivity() != null) getActivity().finish();
         });
@@ -125,14 +128,52 @@ public class HomeFragment extends Fragment {
                 startActivity(new Intent(getActivity(), AddExpenseActivity.class))
         );
 
+        // 📄 Long-press: import a bank / UPI statement CSV
+        fabAddExpense.setOnLongClickListener(v -> {
+            Intent pick = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+            pick.addCategory(Intent.CATEGORY_OPENABLE);
+            pick.setType("text/*");
+            startActivityForResult(pick, REQUEST_IMPORT_CSV);
+            return true;
+        });
+
         return view;
     }
 
+    @Override
+    public void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode != REQUEST_IMPORT_CSV || resultCode != android.app.Activity.RESULT_OK
+                || data == null || data.getData() == null) return;
+
+        Toast.makeText(getContext(), "Importing statement...", Toast.LENGTH_SHORT).show();
+
+        StatementCsvImporter.start(requireContext(), data.getData(), new StatementCsvImporter.Listener() {
+            @Override
+            public void onProgress(int rows, int imported) {
+                Log.d("FinOptics", "Statement import: " + imported + " of " + rows + " rows");
+            }
+
+            @Override
+            public void onComplete(int rows, int imported) {
+                if (getContext() == null) return;
+                Toast.makeText(getContext(), "Imported " + imported + " expenses", Toast.LENGTH_SHORT).show();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (getContext() == null) return;
+                Toast.makeText(getContext(), "Import failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
     private void fetchUserData() {
         if (mAuth.getCurrentUser() == null) return;
 
         db.collection("Users").document(mAuth.getCurrentUser().getUid()).get()
                 .addOnSuccessListener(document -> {
+                    if (!isAdded()) return;
                     if (document.exists()) {
                         String username = document.getString("username");
                         Double budget = document.getDouble("monthly_budget");
@@ -159,34 +200,13 @@ public class HomeFragment extends Fragment {
     // 🔹 NEW METHOD (does NOT affect existing features)
     private void callComputeBaseline() {
         FirebaseUser user = mAuth.getCurrentUser();
-        if (user == null) return;
-
-        user.getIdToken(true).addOnSuccessListener(result -> {
-            String idToken = result.getToken();
-
-            new Thread(() -> {
-                try {
-                    URL url = new URL(
-                            "https://us-central1-finoptics-79357.cloudfunctions.net/computeBaseline"
-                    );
-
-                    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                    conn.setRequestMethod("POST");
-                    conn.setRequestProperty("Authorization", "Bearer " + idToken);
-                    conn.setConnectTimeout(5000);
-                    conn.setReadTimeout(5000);
-                    conn.setDoOutput(true);
-
-                    OutputStream os = conn.getOutputStream();
-                    os.write(new byte[0]);
-                    os.close();
+        // Runs from a Firestore callback; the fragment may have detached since
+        if (user == null || !isAdded()) return;
 
-                    conn.getResponseCode(); // fire-and-forget
-                    conn.disconnect();
-
-                } catch (Exception ignored) {}
-            }).start();
-        });
+        // Fire-and-forget on the shared client; the cached ID token is attached there
+        NetworkGateway.fireAndForget(NetworkGateway.get(requireContext().getApplicationContext()).post(
+                NetworkGateway.COMPUTE_BASELINE_URL,
+                RequestBody.create(new byte[0], null)));
     }
 
     private void startMonthlySync() {
@@ -200,36 +220,30 @@ public class HomeFragment extends Fragment {
         cal.set(Calendar.MINUTE, 0);
         cal.set(Calendar.SECOND, 0);
         cal.set(Calendar.MILLISECOND, 0);
-        com.google.firebase.Timestamp startOfMonth = new com.google.firebase.Timestamp(cal.getTime());
 
-        // 🔹 Preserved your listener exactly, adding only the .whereGreaterThanOrEqualTo filter
-        monthlyStatsListener = db.collection("Users").document(uid)
-                .collection("Expenses")
-                .whereGreaterThanOrEqualTo("timestamp", startOfMonth)
+        // 🔹 One rollup document instead of re-summing the month's expenses
+        long monthStart = cal.getTimeInMillis();
+        monthlyStatsListener = Rollups.month(uid, monthStart)
                 .addSnapshotListener((value, error) -> {
                     if (error != null || value == null) return;
-
-                    double totalSpent = 0;
-                    for (QueryDocumentSnapshot doc : value) {
-                        Double amt = doc.getDouble("amount");
-                        if (amt != null) totalSpent += amt;
-                    }
-                    updateMonthlyUI(totalSpent);
+                    Rollups.totals(value, uid, monthStart, Long.MAX_VALUE, month -> {
+                        if (month != null && getView() != null) {
+                            updateMonthlyUI(Money.toRupees(month.sumPaise));
+                        }
+                    });
                 });
 
-        recentTransactionsListener = db.collection("Users").document(uid)
-                .collection("Expenses")
-                .orderBy("timestamp", Query.Direction.DESCENDING)
-                .limit(5)
-                .addSnapshotListener((value, error) -> {
-                    if (error != null || value == null) return;
+        // Latest five from the local mirror, refreshed on every synced change
+        mirror = ExpenseMirror.get(requireContext());
+        recentTransactionsListener = () -> mirror.read(uid, m -> m.expenses(uid, 5), recent -> {
+            if (recent == null || getView() == null) return;
 
-                    expenseList.clear();
-                    for (QueryDocumentSnapshot doc : value) {
-                        expenseList.add(doc.toObject(Expense.class));
-                    }
-                    adapter.notifyDataSetChanged();
-                });
+            expenseList.clear();
+            expenseList.addAll(recent);
+            adapter.notifyDataSetChanged();
+        });
+        mirror.addListener(recentTransactionsListener);
+        recentTransactionsListener.onExpensesChanged();
     }
 
     private void startTodaySync() {
@@ -246,24 +260,19 @@ public class HomeFragment extends Fragment {
         cal.set(Calendar.MINUTE, 0);
         cal.set(Calendar.SECOND, 0);
         cal.set(Calendar.MILLISECOND, 0);
-        Timestamp startOfToday = new Timestamp(cal.getTime());
+        long startOfToday = cal.getTimeInMillis();
+        cal.set(Calendar.DAY_OF_MONTH, 1);
+        long startOfMonth = cal.getTimeInMillis();
 
         // 2. Fetch Monthly Progress to calculate Dynamic Limit
         db.collection("Users").document(uid).get().addOnSuccessListener(userDoc -> {
             double budget = userDoc.contains("monthly_budget") ? userDoc.getDouble("monthly_budget") : 0;
 
             // Fetch total spent this month to find remaining balance
-            cal.set(Calendar.DAY_OF_MONTH, 1);
-            Timestamp startOfMonth = new Timestamp(cal.getTime());
-
-            db.collection("Users").document(uid).collection("Expenses")
-                    .whereGreaterThanOrEqualTo("timestamp", startOfMonth)
-                    .get()
-                    .addOnSuccessListener(querySnapshot -> {
-                        double spentThisMonth = 0;
-                        for (QueryDocumentSnapshot doc : querySnapshot) {
-                            spentThisMonth += doc.getDouble("amount");
-                        }
+            Rollups.month(uid, startOfToday).get().addOnSuccessListener(monthDoc ->
+                    Rollups.totals(monthDoc, uid, startOfMonth, Long.MAX_VALUE, month -> {
+                        if (month == null || getView() == null) return;
+                        double spentThisMonth = Money.toRupees(month.sumPaise);
 
                         // 🔹 CALCULATE STS: (Remaining Budget / Days Left)
                         double remainingBudget = Math.max(0, budget - spentThisMonth);
@@ -279,40 +288,36 @@ public class HomeFragment extends Fragment {
 
 
                         // 3. Original Today Sync Logic with Dynamic Limit
-                        todayListener = db.collection("Users").document(uid)
-                                .collection("Expenses")
-                                .whereGreaterThanOrEqualTo("timestamp", startOfToday)
+                        todayListener = Rollups.day(uid, startOfToday)
                                 .addSnapshotListener((value, error) -> {
                                     if (error != null || value == null) return;
-
-                                    double todayTotal = 0;
-                                    for (QueryDocumentSnapshot doc : value) {
-                                        Double amt = doc.getDouble("amount");
-                                        if (amt != null) todayTotal += amt;
-                                    }
-
-                                    if (progressTodayBar != null) {
-                                        progressTodayBar.setMax((int) dynamicDailyLimit);
-                                        progressTodayBar.setProgress((int) Math.min(todayTotal, dynamicDailyLimit));
-                                    }
-
-                                    if (tvTodayStatus != null) {
-                                        if (todayTotal >= dynamicDailyLimit) {
-                                            tvTodayStatus.setText("Over limit");
-                                            tvTodayStatus.setTextColor(android.graphics.Color.parseColor("#FF5252"));
-
-
-
-                                        } else {
-                                            tvTodayStatus.setText("On track");
-                                            tvTodayStatus.setTextColor(android.graphics.Color.parseColor("#00E676"));
+                                    Rollups.totals(value, uid, startOfToday, Long.MAX_VALUE, today -> {
+                                        if (today != null && getView() != null) {
+                                            updateTodayUI(Money.toRupees(today.sumPaise), dynamicDailyLimit);
                                         }
-                                    }
+                                    });
                                 });
-                    });
+                    }));
         });
     }
 
+    private void updateTodayUI(double todayTotal, double dynamicDailyLimit) {
+        if (progressTodayBar != null) {
+            progressTodayBar.setMax((int) dynamicDailyLimit);
+            progressTodayBar.setProgress((int) Math.min(todayTotal, dynamicDailyLimit));
+        }
+
+        if (tvTodayStatus != null) {
+            if (todayTotal >= dynamicDailyLimit) {
+                tvTodayStatus.setText("Over limit");
+                tvTodayStatus.setTextColor(android.graphics.Color.parseColor("#FF5252"));
+            } else {
+                tvTodayStatus.setText("On track");
+                tvTodayStatus.setTextColor(android.graphics.Color.parseColor("#00E676"));
+            }
+        }
+    }
+
     private void updateMonthlyUI(double spent) {
         tvSpentValue.setText("₹" + String.format("%,.0f", spent));
 
@@ -423,7 +428,7 @@ public class HomeFragment extends Fragment {
     public void onDestroyView() {
         super.onDestroyView();
         if (monthlyStatsListener != null) monthlyStatsListener.remove();
-        if (recentTransactionsListener != null) recentTransactionsListener.remove();
+        if (recentTransactionsListener != null) mirror.removeListener(recentTransactionsListener);
         if (todayListener != null) todayListener.remove();
         if (alertListener != null) alertListener.remove();
     }
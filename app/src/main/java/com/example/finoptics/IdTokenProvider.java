@@ -0,0 +1,123 @@
+package com.example.finoptics;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.auth.GetTokenResult;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Cached Firebase ID token for our authenticated Cloud Functions.
+ *
+ * The token is reused until it is close to expiry instead of being
+ * force-refreshed before every call. Concurrent callers that find it stale
+ * share one in-flight refresh. As an OkHttp interceptor it adds the Bearer
+ * header to requests for the functions host, and on a 401 it force-refreshes
+ * once and retries.
+ */
+public final class IdTokenProvider implements Interceptor {
+
+    private static final String TAG = "FinOptics_IdToken";
+
+    /** Requests to this host carry the user's ID token. */
+    static final String FUNCTIONS_HOST = "us-central1-finoptics-79357.cloudfunctions.net";
+
+    // Refresh this long before expiry so a token never dies mid-request
+    private static final long REFRESH_MARGIN_MS = 5 * 60 * 1000L;
+    private static final long REFRESH_TIMEOUT_MS = 10_000;
+
+    private static final IdTokenProvider INSTANCE = new IdTokenProvider();
+
+    private String uid;
+    private String token;
+    private long expiresAtMs;
+    private Task<GetTokenResult> inFlight;
+
+    private IdTokenProvider() {}
+
+    public static IdTokenProvider get() {
+        return INSTANCE;
+    }
+
+    /**
+     * A valid token for the signed-in user, refreshing only when needed.
+     * Blocks during a refresh; null when signed out or the refresh failed.
+     */
+    @WorkerThread
+    @Nullable
+    public String token(boolean forceRefresh) {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) return null;
+
+        Task<GetTokenResult> refresh;
+        synchronized (this) {
+            if (!user.getUid().equals(uid)) invalidate();
+            if (!forceRefresh && token != null
+                    && System.currentTimeMillis() < expiresAtMs - REFRESH_MARGIN_MS) {
+                return token;
+            }
+            // Join a refresh already under way rather than starting another
+            if (inFlight == null || inFlight.isComplete()) {
+                inFlight = user.getIdToken(forceRefresh);
+            }
+            refresh = inFlight;
+        }
+
+        try {
+            GetTokenResult result = Tasks.await(refresh, REFRESH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            synchronized (this) {
+                uid = user.getUid();
+                token = result.getToken();
+                expiresAtMs = result.getExpirationTimestamp() * 1000;
+                return token;
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "ID token refresh failed", e);
+            return null;
+        }
+    }
+
+    /** Drops the cached token, e.g. on sign-out. */
+    public synchronized void invalidate() {
+        uid = null;
+        token = null;
+        expiresAtMs = 0;
+    }
+
+    // ================= INTERCEPTOR =================
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!FUNCTIONS_HOST.equals(request.url().host()) || request.header("Authorization") != null) {
+            return chain.proceed(request);
+        }
+
+        String current = token(false);
+        if (current == null) return chain.proceed(request); // server answers 401 itself
+
+        Response response = chain.proceed(withToken(request, current));
+        if (response.code() != 401) return response;
+
+        // Revoked or clock-skewed token: one forced refresh, one retry
+        response.close();
+        String fresh = token(true);
+        return chain.proceed(fresh != null ? withToken(request, fresh) : request);
+    }
+
+    private static Request withToken(Request request, String token) {
+        return request.newBuilder().header("Authorization", "Bearer " + token).build();
+    }
+}
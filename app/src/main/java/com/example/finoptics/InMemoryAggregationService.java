@@ -0,0 +1,55 @@
+package com.example.finoptics;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link AggregationService} over expenses held in memory, for unit tests
+ * and emulator runs. Answers synchronously.
+ */
+public final class InMemoryAggregationService implements AggregationService {
+
+    private static final class Row {
+        final String uid;
+        final long paise;
+        final String category;
+        final long millis;
+
+        Row(String uid, long paise, String category, long millis) {
+            this.uid = uid;
+            this.paise = paise;
+            this.category = category;
+            this.millis = millis;
+        }
+    }
+
+    private final List<Row> rows = new ArrayList<>();
+
+    public synchronized InMemoryAggregationService add(String uid, long paise,
+                                                       @Nullable String category, long millis) {
+        rows.add(new Row(uid, paise, category, millis));
+        return this;
+    }
+
+    public synchronized void clear() {
+        rows.clear();
+    }
+
+    @Override
+    public void aggregate(String uid, long fromMs, long toMs, @Nullable String category,
+                          Callback callback) {
+        long sum = 0;
+        long count = 0;
+        synchronized (this) {
+            for (Row r : rows) {
+                if (!r.uid.equals(uid) || r.millis < fromMs || r.millis >= toMs) continue;
+                if (category != null && !category.equals(r.category)) continue;
+                sum += r.paise;
+                count++;
+            }
+        }
+        callback.onResult(new Result(sum, count));
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.finoptics;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Shared parsing core for every capture path (bank SMS, UPI notifications,
+ * manual entry). Amounts come from {@link AmountParser} and merchants from
+ * {@link MerchantTokenizer}; the direction patterns are compiled once at
+ * class-load time and each thread keeps its own reusable Matcher, so parsing
+ * a message never compiles a regex.
+ */
+public final class IngestionEngine {
+
+    // ================= PRECOMPILED PATTERNS =================
+
+    private static final Pattern INCOMING = Pattern.compile(
+            "credited|received|refund|cashback|reversal", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern OUTGOING = Pattern.compile(
+            "debit|spent|paid|purchase|sent|withdrawn|transfer", Pattern.CASE_INSENSITIVE);
+
+    // ================= PER-THREAD MATCHERS =================
+
+    private static final ThreadLocal<Matcher[]> MATCHERS = new ThreadLocal<Matcher[]>() {
+        @Override
+        protected Matcher[] initialValue() {
+            Matcher[] m = new Matcher[M_COUNT];
+            m[M_INCOMING] = INCOMING.matcher("");
+            m[M_OUTGOING] = OUTGOING.matcher("");
+            return m;
+        }
+    };
+
+    private static final int M_INCOMING = 0;
+    private static final int M_OUTGOING = 1;
+    private static final int M_COUNT = 2;
+
+    private IngestionEngine() {}
+
+    /**
+     * Parses a bank SMS or payment notification.
+     * Returns null when the text carries no currency amount.
+     */
+    public static ParsedTransaction parse(String content) {
+        if (content == null || content.isEmpty()) return null;
+
+        long paise = AmountParser.parsePaise(content);
+        if (paise == AmountParser.NONE) return null;
+
+        Matcher[] m = MATCHERS.get();
+
+        ParsedTransaction result = new ParsedTransaction();
+        result.content = content;
+        result.amountPaise = paise;
+        result.amount = Money.toRupees(paise);
+        result.incoming = isIncoming(m, content);
+        result.merchant = MerchantTokenizer.extract(content);
+        return result;
+    }
+
+    /** First number in free text, 0 if none. Used by manual entry. */
+    public static double extractAmount(String input) {
+        long paise = AmountParser.parseBarePaise(input);
+        return paise == AmountParser.NONE ? 0 : Money.toRupees(paise);
+    }
+
+    // Incoming only if no outgoing keyword exists
+    private static boolean isIncoming(Matcher[] m, String content) {
+        return m[M_INCOMING].reset(content).find() && !m[M_OUTGOING].reset(content).find();
+    }
+
+    // Helper class to return multiple values
+    public static class ParsedTransaction {
+        public double amount;
+        public long amountPaise;
+        public boolean incoming;
+        public String merchant;
+        public String content;
+
+        public String type() {
+            return incoming ? "income" : "expense";
+        }
+    }
+}
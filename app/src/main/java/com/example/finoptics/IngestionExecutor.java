@@ -0,0 +1,65 @@
+package com.example.finoptics;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded background pool for capture work (PDU decoding, parsing,
+ * categorization). Keeps all of it off the broadcast main thread, even when
+ * a burst fills the queue: overflow goes to a single spill-over worker.
+ */
+public final class IngestionExecutor {
+
+    private static final String TAG = "FinOptics_Ingestion";
+
+    private static final int CORE_THREADS = 1;
+    private static final int MAX_THREADS = 2;
+    private static final int QUEUE_CAPACITY = 64;
+
+    // Unbounded, one thread: only sees work while the main pool is saturated
+    private static final ExecutorService OVERFLOW = Executors.newSingleThreadExecutor(r ->
+            new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, "finoptics-ingest-overflow"));
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            CORE_THREADS, MAX_THREADS,
+            30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY),
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    return new Thread(() -> {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }, "finoptics-ingest-" + count.incrementAndGet());
+                }
+            },
+            // Saturated: never drop a message, and never run it on the caller
+            // (the receiver's main thread) either
+            (r, executor) -> {
+                Log.w(TAG, "Ingestion queue full — spilling to overflow worker");
+                OVERFLOW.execute(r);
+            });
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private IngestionExecutor() {}
+
+    public static void execute(Runnable task) {
+        EXECUTOR.execute(task);
+    }
+}
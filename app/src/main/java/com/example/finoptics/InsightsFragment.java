@@ -10,6 +10,8 @@ import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.ProgressBar;
 import android.widget.TextView;
+import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 
 
@@ -23,7 +25,7 @@ import com.google.firebase.Timestamp;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.ListenerRegistration;
 
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -57,7 +59,11 @@ public class InsightsFragment extends Fragment {
     private ImageView imgRewardMedal;
     private TextView tvRewardTitle, tvTotalSpentLabel;
 
-    private final Map<Boolean, Map<String, Double>> cache = new HashMap<>();
+    // Category -> paise, per time filter
+    private final Map<Boolean, Map<String, Long>> cache = new HashMap<>();
+
+    // Live rollup of the current month; last month is read once
+    private ListenerRegistration thisMonthListener;
 
     private MaterialButton btnViewCalendar;
 
@@ -80,9 +86,28 @@ public class InsightsFragment extends Fragment {
 
 
         loadInsights(); // default = this month
+        long now = System.currentTimeMillis();
+        thisMonthListener = Rollups.month(userId, now)
+                .addSnapshotListener((value, error) -> {
+                    if (error != null || value == null || !isAdded()) return;
+                    // A month without its rollup yet is summed per category from the local mirror
+                    Rollups.categoryTotals(value, userId, now, totals -> {
+                        if (!isAdded()) return;
+                        cache.put(false, totals);
+                        if (isLast3Months) return;
+                        layoutCategoryBars.removeAllViews();
+                        renderAll(totals);
+                    });
+                });
         return view;
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (thisMonthListener != null) thisMonthListener.remove();
+    }
+
     private void bindViews(View view) {
         toggleTimeFilter = view.findViewById(R.id.toggleTimeFilter);
         layoutCategoryBars = view.findViewById(R.id.layoutCategoryBars);
@@ -148,78 +173,39 @@ public class InsightsFragment extends Fragment {
             renderAll(cache.get(isLast3Months));
             return;
         }
+        // This month arrives through thisMonthListener
+        if (!isLast3Months) return;
 
         Timestamp startTimestamp = getStartTimestamp();
-
-        // NEW: Define the end of the range
-        Calendar endCal = Calendar.getInstance();
-        if (isLast3Months) {
-            // End of last month = 1st of this month at 00:00:00 minus 1ms
-            endCal.set(Calendar.DAY_OF_MONTH, 1);
-            endCal.set(Calendar.HOUR_OF_DAY, 0);
-            endCal.set(Calendar.MINUTE, 0);
-            endCal.set(Calendar.SECOND, 0);
-            endCal.set(Calendar.MILLISECOND, 0);
-        }
-        long endMillis = isLast3Months ? endCal.getTimeInMillis() : Long.MAX_VALUE;
-
         Log.d("INSIGHTS_DEBUG", "Query startTimestamp: " + startTimestamp.toDate());
 
-        db.collection("Users")
-                .document(userId)
-                .collection("Expenses")
-                .get()
-                .addOnSuccessListener(snapshot -> {
-                    Log.d("INSIGHTS_DEBUG", "Total documents fetched: " + snapshot.size());
-
-                    Map<String, Double> categoryTotals = new HashMap<>();
-
-                    for (QueryDocumentSnapshot doc : snapshot) {
-                        Log.d("INSIGHTS_DEBUG", "Doc ID: " + doc.getId() + " Data: " + doc.getData());
-
-                        String category = doc.getString("category");
-
-                        Double amount = doc.getDouble("amount");
-                        if (amount == null) {
-                            Object amtObj = doc.get("amount");
-                            if (amtObj instanceof Long) amount = ((Long) amtObj).doubleValue();
-                            else if (amtObj instanceof Double) amount = (Double) amtObj;
-                        }
-
-                        Timestamp ts = doc.getTimestamp("timestamp");
-                        long tsMillis = 0;
-                        if (ts != null) tsMillis = ts.toDate().getTime();
-                        else {
-                            Object tObj = doc.get("timestamp");
-                            if (tObj instanceof Long) tsMillis = (Long) tObj;
-                        }
-
-                        if (category == null || amount == null) continue;
-
-                        // UPDATED FILTER: Check both start and end
-                        if (tsMillis < startTimestamp.toDate().getTime() || tsMillis >= endMillis) continue;
-
-                        categoryTotals.put(
-                                category,
-                                categoryTotals.getOrDefault(category, 0.0) + amount
-                        );
-                    }
-
-                    cache.put(isLast3Months, categoryTotals);
-                    renderAll(categoryTotals);
-                })
-                .addOnFailureListener(e -> Log.e("INSIGHTS", "Firestore error", e));
+        // Last month's rollup document instead of every expense in it
+        long start = startTimestamp.toDate().getTime();
+        Rollups.month(userId, start).get()
+                .addOnSuccessListener(monthDoc -> {
+                    if (!isAdded()) return;
+                    Rollups.categoryTotals(monthDoc, userId, start, categoryTotals -> {
+                        if (!isAdded()) return;
+                        Log.d("INSIGHTS_DEBUG", "Categories in range: " + categoryTotals.size());
+
+                        cache.put(true, categoryTotals);
+                        if (!isLast3Months) return;
+                        // Another read may have rendered meanwhile
+                        layoutCategoryBars.removeAllViews();
+                        renderAll(categoryTotals);
+                    });
+                });
     }
 
-    private void renderAll(Map<String, Double> categoryTotals) {
+    private void renderAll(Map<String, Long> categoryTotals) {
         // 1. Calculate the total spent across all categories
-        double totalSpent = 0;
-        for (Double value : categoryTotals.values()) {
-            totalSpent += value;
+        long totalPaise = 0;
+        for (long value : categoryTotals.values()) {
+            totalPaise += value;
         }
 
         // FIX: Create an effectively final variable for the lambda expression
-        final double finalTotalSpent = totalSpent;
+        final double finalTotalSpent = Money.toRupees(totalPaise);
 
         // 2. Handle the Reward Card for "Last Month"
         if (isLast3Months) {
@@ -227,10 +213,11 @@ public class InsightsFragment extends Fragment {
             if (cardMonthlyReward != null) cardMonthlyReward.setVisibility(View.VISIBLE);
             if (cardAiInsight != null) cardAiInsight.setVisibility(View.GONE);
 
-            tvTotalSpentLabel.setText("Total Spent: ₹" + Math.round(finalTotalSpent));
+            tvTotalSpentLabel.setText("Total Spent: ₹" + Money.roundRupees(totalPaise));
 
             // Fetch budget from Firestore to determine the medal
             db.collection("Users").document(userId).get().addOnSuccessListener(userDoc -> {
+                if (!isAdded()) return;
                 double budget = userDoc.contains("monthly_budget") ? userDoc.getDouble("monthly_budget") : 0;
 
                 if (finalTotalSpent <= budget && budget > 0) {
@@ -269,16 +256,16 @@ public class InsightsFragment extends Fragment {
         renderTopCategory(categoryTotals);
         renderCategoryBreakdown(categoryTotals);
     }
-    private void renderCategoryBreakdown(Map<String, Double> categoryTotals) {
+    private void renderCategoryBreakdown(Map<String, Long> categoryTotals) {
         layoutCategoryBars.removeAllViews();
-        double maxValue = Collections.max(categoryTotals.values());
+        long maxValue = Math.max(1, Collections.max(categoryTotals.values()));
 
-        List<Map.Entry<String, Double>> sorted = new ArrayList<>(categoryTotals.entrySet());
-        Collections.sort(sorted, (a, b) -> Double.compare(b.getValue(), a.getValue()));
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(categoryTotals.entrySet());
+        Collections.sort(sorted, (a, b) -> Long.compare(b.getValue(), a.getValue()));
 
         LayoutInflater inflater = LayoutInflater.from(getContext());
 
-        for (Map.Entry<String, Double> entry : sorted) {
+        for (Map.Entry<String, Long> entry : sorted) {
             View row = inflater.inflate(R.layout.item_category_bar, layoutCategoryBars, false);
 
             TextView tvCategory = row.findViewById(R.id.tvCategoryName);
@@ -286,9 +273,9 @@ public class InsightsFragment extends Fragment {
             ProgressBar progressBar = row.findViewById(R.id.progressCategory);
 
             tvCategory.setText(entry.getKey());
-            tvAmount.setText("₹" + Math.round(entry.getValue()));
+            tvAmount.setText("₹" + Money.roundRupees(entry.getValue()));
 
-            int percent = (int) ((entry.getValue() / maxValue) * 100);
+            int percent = (int) (entry.getValue() * 100 / maxValue);
             progressBar.setMax(100);
 
             ObjectAnimator.ofInt(progressBar, "progress", 0, percent)
@@ -299,11 +286,11 @@ public class InsightsFragment extends Fragment {
         }
     }
 
-    private void renderTopCategory(Map<String, Double> categoryTotals) {
+    private void renderTopCategory(Map<String, Long> categoryTotals) {
         String topCategory = null;
-        double maxAmount = 0;
+        long maxAmount = 0;
 
-        for (Map.Entry<String, Double> entry : categoryTotals.entrySet()) {
+        for (Map.Entry<String, Long> entry : categoryTotals.entrySet()) {
             if (entry.getValue() > maxAmount) {
                 maxAmount = entry.getValue();
                 topCategory = entry.getKey();
@@ -313,14 +300,14 @@ public class InsightsFragment extends Fragment {
         if (topCategory == null) return;
 
         tvTopCategoryName.setText(topCategory);
-        tvTopCategoryAmount.setText("₹" + Math.round(maxAmount));
+        tvTopCategoryAmount.setText("₹" + Money.roundRupees(maxAmount));
         imgTopCategory.setImageResource(getCategoryIcon(topCategory));
     }
 
     private void setupAiButton() {
         btnGenerateAiInsight.setOnClickListener(v -> {
 
-            Map<String, Double> data = cache.get(isLast3Months);
+            Map<String, Long> data = cache.get(isLast3Months);
             if (data == null || data.isEmpty()) {
                 tvAiInsight.setText("Not enough data to generate insights.");
                 tvAiInsight.setVisibility(View.VISIBLE);
@@ -332,23 +319,26 @@ public class InsightsFragment extends Fragment {
 
             // 1️⃣ Build prompt
             StringBuilder prompt = new StringBuilder();
-            double totalSpent = 0; // 🔹 Added for context
-            for (Map.Entry<String, Double> e : data.entrySet()) {
+            long totalPaise = 0; // 🔹 Added for context
+            for (Map.Entry<String, Long> e : data.entrySet()) {
                 prompt.append(e.getKey())
                         .append(": ")
-                        .append(Math.round(e.getValue()))
+                        .append(Money.roundRupees(e.getValue()))
                         .append("\n");
-                totalSpent += e.getValue(); // 🔹 Summing up for the 'spent' field
+                totalPaise += e.getValue(); // 🔹 Summing up for the 'spent' field
             }
 
             // 🔹 1.5: Fetch Budget context before calling Function
-            double finalTotalSpent = totalSpent;
+            // Captured now: the fragment may be detached by the time Firestore answers
+            Context appContext = requireContext().getApplicationContext();
+            double finalTotalSpent = Money.toRupees(totalPaise);
             db.collection("Users").document(userId).get().addOnSuccessListener(userDoc -> {
+                if (!isAdded()) return;
                 double budget = userDoc.contains("monthly_budget") ? userDoc.getDouble("monthly_budget") : 0;
                 String prediction = (finalTotalSpent > budget) ? "Over budget" : "On track";
 
-                // 2️⃣ Call Firebase Function
-                OkHttpClient client = new OkHttpClient();
+                // 2️⃣ Call Firebase Function (shared client: pooled connections)
+                NetworkGateway gateway = NetworkGateway.get(appContext);
 
                 JSONObject json = new JSONObject();
                 try {
@@ -358,70 +348,59 @@ public class InsightsFragment extends Fragment {
                     json.put("prediction", prediction); // 🔹 New field
                 } catch (Exception ignored) {}
 
-                // 🔹 2.5: Get Auth Token (Required for your new Auth Guard)
-                FirebaseAuth.getInstance().getCurrentUser().getIdToken(true).addOnSuccessListener(result -> {
-                    String idToken = result.getToken();
-
-                    RequestBody body = RequestBody.create(
-                            json.toString(),
-                            MediaType.parse("application/json")
-                    );
-
-                    Request request = new Request.Builder()
-                            .url("https://us-central1-finoptics-79357.cloudfunctions.net/getAiInsight")
-                            .addHeader("Authorization", "Bearer " + idToken) // 🔹 Added for security
-                            .post(body)
-                            .build();
-
-                    client.newCall(request).enqueue(new Callback() {
-                        @Override
-                        public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                            if (getActivity() == null) return; // 🔹 Safety check
-                            requireActivity().runOnUiThread(() -> {
-                                tvAiLoading.setVisibility(View.GONE);
-                                tvAiInsight.setVisibility(View.VISIBLE);
-                                tvAiInsight.setText("Failed to generate insight.");
-                            });
-                        }
-
-                        @Override
-
-                        public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
-                            // 🔹 Using try (...) here automatically closes the response body
-                            try (ResponseBody responseBody = response.body()) {
-                                if (!response.isSuccessful()) {
-                                    updateUiWithError("Server error: " + response.code());
-                                    return;
-                                }
-
-                                String res = responseBody.string();
-                                JSONObject obj = new JSONObject(res);
-                                String reply = obj.getString("reply");
-
-                                if (getActivity() == null) return;
-                                requireActivity().runOnUiThread(() -> {
+                // 🔹 2.5: Auth token is cached and attached by IdTokenProvider (Auth Guard)
+                gateway.postJson(NetworkGateway.AI_INSIGHT_URL, json.toString())
+                        .enqueue(new Callback() {
+                            @Override
+                            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                                Activity activity = getActivity(); // 🔹 Safety check
+                                if (activity == null) return;
+                                activity.runOnUiThread(() -> {
                                     tvAiLoading.setVisibility(View.GONE);
                                     tvAiInsight.setVisibility(View.VISIBLE);
-                                    tvAiInsight.setText(reply);
+                                    tvAiInsight.setText("Failed to generate insight.");
                                 });
+                            }
 
-                            } catch (Exception e) {
-                                updateUiWithError("AI returned an invalid response.");
+                            @Override
+
+                            public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
+                                // 🔹 Using try (...) here automatically closes the response body
+                                try (ResponseBody responseBody = response.body()) {
+                                    if (!response.isSuccessful()) {
+                                        updateUiWithError("Server error: " + response.code());
+                                        return;
+                                    }
+
+                                    String res = responseBody.string();
+                                    JSONObject obj = new JSONObject(res);
+                                    String reply = obj.getString("reply");
+
+                                    Activity activity = getActivity();
+                                    if (activity == null) return;
+                                    activity.runOnUiThread(() -> {
+                                        tvAiLoading.setVisibility(View.GONE);
+                                        tvAiInsight.setVisibility(View.VISIBLE);
+                                        tvAiInsight.setText(reply);
+                                    });
+
+                                } catch (Exception e) {
+                                    updateUiWithError("AI returned an invalid response.");
+                                }
                             }
-                        }
 
-                        // Small helper to keep those nested runOnUiThread brackets clean
-                        private void updateUiWithError(String msg) {
-                            if (getActivity() != null) {
-                                requireActivity().runOnUiThread(() -> {
-                                    tvAiLoading.setVisibility(View.GONE);
-                                    tvAiInsight.setVisibility(View.VISIBLE);
-                                    tvAiInsight.setText(msg);
-                                });
+                            // Small helper to keep those nested runOnUiThread brackets clean
+                            private void updateUiWithError(String msg) {
+                                Activity activity = getActivity();
+                                if (activity != null) {
+                                    activity.runOnUiThread(() -> {
+                                        tvAiLoading.setVisibility(View.GONE);
+                                        tvAiInsight.setVisibility(View.VISIBLE);
+                                        tvAiInsight.setText(msg);
+                                    });
+                                }
                             }
-                        }
-                    });
-                });
+                        });
             });
         });
     }
@@ -0,0 +1,237 @@
+package com.example.finoptics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho–Corasick automaton over the categorization dictionary.
+ *
+ * Every keyword carries a category and a priority layer (vendor, cluster,
+ * learned). A single left-to-right scan reports all whole-word hits, so the
+ * cost no longer grows with the number of keywords, and "ola" stops matching
+ * inside "chocolate". Instances are immutable; rebuild one via {@link Builder}
+ * when the dictionary changes.
+ */
+public final class KeywordAutomaton {
+
+    public static final int LAYER_VENDOR = 0;
+    public static final int LAYER_CLUSTER = 1;
+    public static final int LAYER_LEARNED = 2;
+
+    public interface MatchListener {
+        void onMatch(int start, int end, String category, int layer);
+    }
+
+    // ---------- Compiled tables ----------
+
+    private final char[] alphabet;     // sorted; symbol = index + 1, 0 = any other char
+    private final int width;           // alphabet.length + 1
+    private final int[] delta;         // state * width + symbol -> next state
+    private final int[] output;        // keyword id ending at state, or -1
+    private final int[] dictLink;      // nearest suffix state with an output, or -1
+
+    private final int[] keywordLength;
+    private final int[] keywordLayer;
+    private final String[] keywordCategory;
+
+    private KeywordAutomaton(char[] alphabet, int[] delta, int[] output, int[] dictLink,
+                             int[] keywordLength, int[] keywordLayer, String[] keywordCategory) {
+        this.alphabet = alphabet;
+        this.width = alphabet.length + 1;
+        this.delta = delta;
+        this.output = output;
+        this.dictLink = dictLink;
+        this.keywordLength = keywordLength;
+        this.keywordLayer = keywordLayer;
+        this.keywordCategory = keywordCategory;
+    }
+
+    /** Reports every whole-word keyword hit in text, in order of end position. */
+    public void scan(CharSequence text, MatchListener listener) {
+        int state = 0;
+        int n = text.length();
+
+        for (int i = 0; i < n; i++) {
+            state = delta[state * width + symbol(text.charAt(i))];
+
+            int hit = output[state] >= 0 ? state : dictLink[state];
+            while (hit >= 0) {
+                int id = output[hit];
+                int start = i - keywordLength[id] + 1;
+                if (isBoundary(text, start - 1) && isBoundary(text, i + 1)) {
+                    listener.onMatch(start, i + 1, keywordCategory[id], keywordLayer[id]);
+                }
+                hit = dictLink[hit];
+            }
+        }
+    }
+
+    /**
+     * Category of the highest-priority hit (lowest layer, earliest position),
+     * or null when nothing matches.
+     */
+    public String bestMatch(CharSequence text) {
+        int id = bestMatchId(text);
+        return id < 0 ? null : keywordCategory[id];
+    }
+
+    /** Keyword id of the highest-priority hit, or -1; see {@link #categoryOf}/{@link #layerOf}. */
+    public int bestMatchId(CharSequence text) {
+        int state = 0;
+        int n = text.length();
+        int best = -1;
+
+        for (int i = 0; i < n; i++) {
+            state = delta[state * width + symbol(text.charAt(i))];
+
+            int hit = output[state] >= 0 ? state : dictLink[state];
+            while (hit >= 0) {
+                int id = output[hit];
+                int start = i - keywordLength[id] + 1;
+                if (isBoundary(text, start - 1) && isBoundary(text, i + 1)
+                        && (best < 0 || keywordLayer[id] < keywordLayer[best])) {
+                    best = id;
+                    if (keywordLayer[id] == LAYER_VENDOR) return id;
+                }
+                hit = dictLink[hit];
+            }
+        }
+        return best;
+    }
+
+    public String categoryOf(int id) {
+        return keywordCategory[id];
+    }
+
+    public int layerOf(int id) {
+        return keywordLayer[id];
+    }
+
+    public int size() {
+        return keywordCategory.length;
+    }
+
+    private int symbol(char c) {
+        c = Character.toLowerCase(c);
+        int idx = Arrays.binarySearch(alphabet, c);
+        return idx < 0 ? 0 : idx + 1;
+    }
+
+    private static boolean isBoundary(CharSequence text, int index) {
+        return index < 0 || index >= text.length() || !Character.isLetterOrDigit(text.charAt(index));
+    }
+
+    // ================= BUILDER =================
+
+    public static final class Builder {
+
+        // keyword -> {category, layer}; a keyword keeps its highest-priority layer
+        private final Map<String, Object[]> keywords = new TreeMap<>();
+
+        public Builder add(String keyword, String category, int layer) {
+            if (keyword == null || category == null) return this;
+            String key = keyword.toLowerCase().trim();
+            if (key.isEmpty()) return this;
+
+            Object[] existing = keywords.get(key);
+            if (existing == null || (Integer) existing[1] > layer) {
+                keywords.put(key, new Object[]{category, layer});
+            }
+            return this;
+        }
+
+        public Builder addAll(Map<String, ?> map, int layer) {
+            for (Map.Entry<String, ?> e : map.entrySet()) {
+                if (e.getValue() instanceof String) add(e.getKey(), (String) e.getValue(), layer);
+            }
+            return this;
+        }
+
+        public Builder addCluster(String category, String[] words) {
+            for (String w : words) add(w, category, LAYER_CLUSTER);
+            return this;
+        }
+
+        public KeywordAutomaton build() {
+            int count = keywords.size();
+            String[] words = keywords.keySet().toArray(new String[0]);
+            int[] length = new int[count];
+            int[] layer = new int[count];
+            String[] category = new String[count];
+
+            // Alphabet = every char used by any keyword
+            StringBuilder chars = new StringBuilder();
+            int totalChars = 0;
+            for (int i = 0; i < count; i++) {
+                Object[] meta = keywords.get(words[i]);
+                category[i] = (String) meta[0];
+                layer[i] = (Integer) meta[1];
+                length[i] = words[i].length();
+                totalChars += length[i];
+                for (int j = 0; j < words[i].length(); j++) {
+                    char c = words[i].charAt(j);
+                    if (chars.indexOf(String.valueOf(c)) < 0) chars.append(c);
+                }
+            }
+            char[] alphabet = chars.toString().toCharArray();
+            Arrays.sort(alphabet);
+            int width = alphabet.length + 1;
+
+            // 1. Trie (0 = missing edge; root is state 0 so it is never a target)
+            int capacity = totalChars + 1;
+            int[] delta = new int[capacity * width];
+            int[] output = new int[capacity];
+            Arrays.fill(output, -1);
+            int states = 1;
+
+            for (int i = 0; i < count; i++) {
+                int s = 0;
+                for (int j = 0; j < words[i].length(); j++) {
+                    int sym = Arrays.binarySearch(alphabet, words[i].charAt(j)) + 1;
+                    int next = delta[s * width + sym];
+                    if (next == 0) {
+                        next = states++;
+                        delta[s * width + sym] = next;
+                    }
+                    s = next;
+                }
+                output[s] = i;
+            }
+
+            // 2. BFS: failure links, dictionary links, and full DFA transitions
+            int[] fail = new int[states];
+            int[] dictLink = new int[states];
+            Arrays.fill(dictLink, -1);
+            List<Integer> queue = new ArrayList<>(states);
+
+            for (int sym = 0; sym < width; sym++) {
+                int child = delta[sym];
+                if (child != 0) queue.add(child);
+            }
+
+            for (int head = 0; head < queue.size(); head++) {
+                int s = queue.get(head);
+                int f = fail[s];
+                dictLink[s] = output[f] >= 0 ? f : dictLink[f];
+
+                for (int sym = 0; sym < width; sym++) {
+                    int child = delta[s * width + sym];
+                    if (child != 0) {
+                        fail[child] = delta[f * width + sym];
+                        queue.add(child);
+                    } else {
+                        delta[s * width + sym] = delta[f * width + sym];
+                    }
+                }
+            }
+
+            return new KeywordAutomaton(alphabet,
+                    Arrays.copyOf(delta, states * width),
+                    Arrays.copyOf(output, states),
+                    dictLink, length, layer, category);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.finoptics;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory view of the "AI_Learning" keyword → category preferences.
+ *
+ * Loaded once per process; later edits (ours or anyone else's) arrive through
+ * a change listener and are applied incrementally. Writes go to memory first
+ * and are persisted with apply(), so recording never blocks the caller. A
+ * generation counter lets {@link CategorizationEngine} rebuild its automaton
+ * only when the dictionary actually changed.
+ */
+public final class LearnedKeywordStore {
+
+    static final String PREFS = "AI_Learning";
+
+    // Words that carry no category signal on their own
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "for", "the", "and", "with", "from", "paid", "spent", "bought", "sent",
+            "rs", "inr", "rupees", "today", "yesterday", "via", "upi", "txn",
+            "payment", "debited", "credited", "account", "merchant", "unknown", "other"));
+
+    private static final int MIN_KEYWORD_LENGTH = 3;
+
+    // Only the first few meaningful words of an input are learned
+    private static final int MAX_KEYWORDS_PER_INPUT = 3;
+
+    private static LearnedKeywordStore instance;
+
+    private final SharedPreferences prefs;
+    private final Map<String, String> keywords = new HashMap<>();
+    private volatile int generation = 0;
+
+    // Held strongly: SharedPreferences only keeps a weak reference to listeners
+    private final SharedPreferences.OnSharedPreferenceChangeListener listener =
+            (p, key) -> onChanged(key);
+
+    private LearnedKeywordStore(SharedPreferences prefs) {
+        this.prefs = prefs;
+        for (Map.Entry<String, ?> e : prefs.getAll().entrySet()) {
+            if (e.getValue() instanceof String) keywords.put(e.getKey(), (String) e.getValue());
+        }
+        prefs.registerOnSharedPreferenceChangeListener(listener);
+    }
+
+    public static synchronized LearnedKeywordStore get(Context context) {
+        if (instance == null) {
+            instance = new LearnedKeywordStore(context.getApplicationContext()
+                    .getSharedPreferences(PREFS, Context.MODE_PRIVATE));
+        }
+        return instance;
+    }
+
+    /** Bumped on every change to the dictionary. */
+    public int generation() {
+        return generation;
+    }
+
+    /** Copy of the current dictionary, for building the automaton. */
+    public synchronized Map<String, String> snapshot() {
+        return new HashMap<>(keywords);
+    }
+
+    /** Learns from a cloud (Gemini) answer; never overrides an existing keyword. */
+    public void recordAiResult(String input, String category) {
+        learn(input, category, false);
+    }
+
+    /** Learns from the user fixing a category; overrides what was learned before. */
+    public void recordCorrection(String input, String category) {
+        learn(input, category, true);
+    }
+
+    // ================= INTERNALS =================
+
+    private void learn(String input, String category, boolean override) {
+        if (input == null || category == null || "Other".equals(category)) return;
+
+        SharedPreferences.Editor editor = null;
+        synchronized (this) {
+            int learned = 0;
+            int i = 0, n = input.length();
+            while (i < n && learned < MAX_KEYWORDS_PER_INPUT) {
+                while (i < n && !Character.isLetter(input.charAt(i))) i++;
+                int start = i;
+                while (i < n && Character.isLetter(input.charAt(i))) i++;
+                if (i - start < MIN_KEYWORD_LENGTH) continue;
+
+                String word = input.substring(start, i).toLowerCase();
+                if (STOP_WORDS.contains(word)) continue;
+                learned++;
+
+                // Vendor and cluster keywords already outrank learned ones in the automaton
+                if (CategorizationEngine.isBuiltInKeyword(word)) continue;
+
+                String previous = keywords.get(word);
+                if (category.equals(previous) || (previous != null && !override)) continue;
+
+                keywords.put(word, category);
+                if (editor == null) editor = prefs.edit();
+                editor.putString(word, category);
+            }
+            if (editor != null) generation++;
+        }
+
+        // Persist off the caller's thread
+        if (editor != null) editor.apply();
+    }
+
+    private synchronized void onChanged(String key) {
+        if (key == null) {
+            // Preferences were cleared
+            if (keywords.isEmpty()) return;
+            keywords.clear();
+            generation++;
+            return;
+        }
+
+        String value;
+        try {
+            value = prefs.getString(key, null);
+        } catch (ClassCastException notAKeyword) {
+            value = null;
+        }
+        String previous = value != null ? keywords.put(key, value) : keywords.remove(key);
+        if (value == null ? previous != null : !value.equals(previous)) generation++;
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.finoptics;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Canonical merchants with dense integer ids.
+ *
+ * Raw merchant spans ("Zomato ltd", "zomato order", "zomato@icici") are
+ * normalized to a key; each key maps to one canonical merchant id, and every
+ * canonical name exists once on the heap.
+ *
+ * Ids are dense, device-local handles for in-process comparisons only; they
+ * mean nothing on another device, after a reinstall or for another account.
+ * What expenses carry into Firestore is the merchant's canonical key (the
+ * normalized form of its primary spelling), which is the same everywhere.
+ *
+ * File format (append-only):  M \t id \t name   (new merchant)
+ *                             A \t key \t id    (alias)
+ */
+public final class MerchantRegistry {
+
+    private static final String TAG = "FinOptics_Merchants";
+    private static final String FILE_NAME = "merchants.tsv";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Id of "no merchant". Real ids start at 1. */
+    public static final int UNKNOWN_ID = 0;
+
+    // Legal-entity and payment-rail words that never distinguish a merchant
+    private static final Set<String> NOISE = new HashSet<>(Arrays.asList(
+            "ltd", "limited", "pvt", "private", "llp", "inc", "co", "india",
+            "order", "orders", "payment", "payments", "upi", "pos", "ecom",
+            "payu", "razorpay", "rzp", "cashfree", "billdesk", "ccavenue"));
+
+    private static MerchantRegistry instance;
+
+    private final File file;
+    private final List<String> names = new ArrayList<>();          // id -> canonical name
+    private final List<String> keys = new ArrayList<>();           // id -> canonical key
+    private final Map<String, Integer> aliases = new HashMap<>();  // normalized key -> id
+    private Writer out;
+
+    MerchantRegistry(File file) {
+        this.file = file;
+        names.add(MerchantTokenizer.UNKNOWN); // id 0
+        keys.add(null);
+        load();
+    }
+
+    public static synchronized MerchantRegistry get(Context context) {
+        if (instance == null) {
+            instance = new MerchantRegistry(
+                    new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    /** Canonical id for a raw merchant span, registering it on first sight. */
+    public synchronized int idFor(String raw) {
+        String key = normalize(raw);
+        if (key.isEmpty()) return UNKNOWN_ID;
+
+        Integer id = aliases.get(key);
+        if (id != null) return id;
+
+        int newId = names.size();
+        names.add(displayName(key));
+        keys.add(key);
+        aliases.put(key, newId);
+        persist("M\t" + newId + "\t" + names.get(newId) + "\n");
+        return newId;
+    }
+
+    /** Existing id for a raw span without registering, or UNKNOWN_ID. */
+    public synchronized int lookup(String raw) {
+        Integer id = aliases.get(normalize(raw));
+        return id != null ? id : UNKNOWN_ID;
+    }
+
+    /** Points another spelling at an existing merchant (e.g. a user merge). */
+    public synchronized void alias(String raw, int id) {
+        String key = normalize(raw);
+        if (key.isEmpty() || id <= UNKNOWN_ID || id >= names.size()) return;
+        if (Integer.valueOf(id).equals(aliases.put(key, id))) return;
+        persist("A\t" + key + "\t" + id + "\n");
+    }
+
+    /** The single shared canonical name for an id. */
+    public synchronized String name(int id) {
+        return id > UNKNOWN_ID && id < names.size() ? names.get(id) : MerchantTokenizer.UNKNOWN;
+    }
+
+    /** Canonical key for an id (what Firestore stores), or null for UNKNOWN_ID. */
+    public synchronized String key(int id) {
+        return id > UNKNOWN_ID && id < keys.size() ? keys.get(id) : null;
+    }
+
+    public synchronized int size() {
+        return names.size() - 1;
+    }
+
+    /** Stamps the canonical merchant name and key on a transaction. */
+    public void tag(Transaction t, String rawMerchant) {
+        int id = idFor(rawMerchant);
+        t.setMerchantKey(key(id));
+        t.setMerchant(id == UNKNOWN_ID ? null : name(id));
+    }
+
+    // ================= NORMALIZATION =================
+
+    /**
+     * "Zomato Ltd." -> "zomato", "zomato.payu@axis" -> "zomato",
+     * "PAYTMQR2810050501@paytm" -> "paytmqr". Empty when nothing is left.
+     */
+    static String normalize(String raw) {
+        if (raw == null || raw.startsWith("Unknown")) return "";
+
+        // VPA: only the user part names the payee; the handle is the bank
+        int at = raw.indexOf('@');
+        String s = at > 0 ? raw.substring(0, at) : raw;
+
+        StringBuilder key = new StringBuilder(s.length());
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= s.length(); i++) {
+            char c = i < s.length() ? Character.toLowerCase(s.charAt(i)) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+                continue;
+            }
+            appendWord(key, word);
+            word.setLength(0);
+        }
+        return key.toString();
+    }
+
+    private static void appendWord(StringBuilder key, StringBuilder word) {
+        // Trailing digits are terminal / order numbers: "paytmqr2810" -> "paytmqr"
+        int end = word.length();
+        while (end > 0 && Character.isDigit(word.charAt(end - 1))) end--;
+        if (end == 0) return;
+
+        String w = word.substring(0, end);
+        if (NOISE.contains(w)) return;
+        if (key.length() > 0) key.append(' ');
+        key.append(w);
+    }
+
+    private static String displayName(String key) {
+        StringBuilder sb = new StringBuilder(key.length());
+        boolean upper = true;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            sb.append(upper ? Character.toUpperCase(c) : c);
+            upper = c == ' ';
+        }
+        return sb.toString();
+    }
+
+    // ================= PERSISTENCE =================
+
+    private void load() {
+        if (!file.exists()) return;
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), UTF8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 3);
+                if (parts.length != 3) continue;
+                try {
+                    if ("M".equals(parts[0])) {
+                        int id = Integer.parseInt(parts[1]);
+                        if (id != names.size()) continue; // ids are dense; skip anything torn
+                        String key = normalize(parts[2]);
+                        names.add(parts[2]);
+                        keys.add(key);
+                        aliases.put(key, id);
+                    } else if ("A".equals(parts[0])) {
+                        int id = Integer.parseInt(parts[2]);
+                        if (id > UNKNOWN_ID && id < names.size()) aliases.put(parts[1], id);
+                    }
+                } catch (NumberFormatException e) {
+                    Log.w(TAG, "Skipping corrupt registry line");
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Merchant registry load failed", e);
+        }
+    }
+
+    private void persist(String line) {
+        try {
+            if (out == null) out = new OutputStreamWriter(new FileOutputStream(file, true), UTF8);
+            out.write(line);
+            out.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "Merchant registry append failed", e);
+        }
+    }
+}
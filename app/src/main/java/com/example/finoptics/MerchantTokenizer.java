@@ -0,0 +1,160 @@
+package com.example.finoptics;
+
+/**
+ * Single-pass merchant extraction for payment messages.
+ *
+ * Anchors are matched case-insensitively directly on the CharSequence, and
+ * the merchant is located as a [start, end) span; the only allocation is the
+ * final merchant String. Replaces the lowercase + split("to ")[1].split(...)
+ * chains, which compiled a regex per split and threw when a message ended
+ * right after the keyword.
+ */
+public final class MerchantTokenizer {
+
+    public static final String UNKNOWN = "Unknown Merchant";
+
+    /** Returned by {@link #findSpan} when no merchant is present. */
+    public static final long NO_SPAN = -1;
+
+    // Anchors, most specific first; the merchant starts right after the anchor
+    private static final String[] ANCHORS = {"paid to ", " to ", " at ", "info:"};
+
+    // Longest merchant we keep; bank SMS tails can run on for a while
+    private static final int MAX_SPAN = 48;
+
+    private MerchantTokenizer() {}
+
+    /** Capitalized merchant name, or {@link #UNKNOWN}. */
+    public static String extract(CharSequence s) {
+        long span = findSpan(s);
+        if (span == NO_SPAN) return UNKNOWN;
+
+        int start = spanStart(span);
+        int end = spanEnd(span);
+        char[] out = new char[end - start];
+        for (int i = start; i < end; i++) {
+            out[i - start] = Character.toLowerCase(s.charAt(i));
+        }
+        out[0] = Character.toUpperCase(out[0]);
+        return new String(out);
+    }
+
+    /**
+     * Merchant span packed as (start << 32 | end), or {@link #NO_SPAN}.
+     * Anchor order: "paid to", "to", "at", a VPA (name@handle), "Info:".
+     */
+    public static long findSpan(CharSequence s) {
+        if (s == null) return NO_SPAN;
+        int n = s.length();
+
+        for (int a = 0; a < 3; a++) {
+            long span = afterAnchor(s, n, ANCHORS[a]);
+            if (span != NO_SPAN) return span;
+        }
+
+        long vpa = vpaSpan(s, n);
+        if (vpa != NO_SPAN) return vpa;
+
+        return afterAnchor(s, n, ANCHORS[3]);
+    }
+
+    public static int spanStart(long span) {
+        return (int) (span >>> 32);
+    }
+
+    public static int spanEnd(long span) {
+        return (int) span;
+    }
+
+    // ================= SCANNING =================
+
+    // First whole-word occurrence of the anchor that is followed by a non-empty span
+    private static long afterAnchor(CharSequence s, int n, String anchor) {
+        // "paid to" must not fire inside "prepaid to"; space-led anchors are bounded already
+        boolean bounded = isWordChar(anchor.charAt(0));
+        int from = 0;
+        while (true) {
+            int at = indexOfIgnoreCase(s, n, anchor, from);
+            if (at < 0) return NO_SPAN;
+            from = at + 1;
+            if (bounded && at > 0 && isWordChar(s.charAt(at - 1))) continue;
+
+            long span = trimmedSpan(s, at + anchor.length(), n);
+            if (span != NO_SPAN) return span;
+        }
+    }
+
+    // Whole "name@handle" token around the first '@' with word chars on both sides
+    private static long vpaSpan(CharSequence s, int n) {
+        for (int i = 1; i + 1 < n; i++) {
+            if (s.charAt(i) != '@' || !isWordChar(s.charAt(i - 1)) || !isWordChar(s.charAt(i + 1))) {
+                continue;
+            }
+            int start = i;
+            while (start > 0 && isVpaChar(s.charAt(start - 1))) start--;
+            int end = i + 1;
+            while (end < n && isVpaChar(s.charAt(end))) end++;
+            while (s.charAt(end - 1) == '.') end--; // sentence full stop
+            return pack(start, end);
+        }
+        return NO_SPAN;
+    }
+
+    // Span from start to the first terminator, whitespace-trimmed and capped
+    private static long trimmedSpan(CharSequence s, int start, int n) {
+        while (start < n && Character.isWhitespace(s.charAt(start))) start++;
+
+        int end = start;
+        int limit = Math.min(n, start + MAX_SPAN);
+        while (end < limit && !terminatesAt(s, end, n)) end++;
+
+        while (end > start && Character.isWhitespace(s.charAt(end - 1))) end--;
+        return end > start ? pack(start, end) : NO_SPAN;
+    }
+
+    // " via", " on", ", ", newline, or a '.' that ends a sentence (not "a.b" in a VPA)
+    private static boolean terminatesAt(CharSequence s, int i, int n) {
+        char c = s.charAt(i);
+        if (c == '\n' || c == '\r' || c == ',' || c == ';') return true;
+        if (c == '.') return i + 1 >= n || Character.isWhitespace(s.charAt(i + 1));
+        if (c == ' ') {
+            return wordAt(s, i + 1, n, "via") || wordAt(s, i + 1, n, "on");
+        }
+        return false;
+    }
+
+    // Case-insensitive whole word at position i
+    private static boolean wordAt(CharSequence s, int i, int n, String word) {
+        int end = i + word.length();
+        if (end > n || !regionMatches(s, i, word)) return false;
+        return end == n || !Character.isLetterOrDigit(s.charAt(end));
+    }
+
+    private static int indexOfIgnoreCase(CharSequence s, int n, String needle, int from) {
+        int last = n - needle.length();
+        for (int i = from; i <= last; i++) {
+            if (regionMatches(s, i, needle)) return i;
+        }
+        return -1;
+    }
+
+    // needle is lowercase
+    private static boolean regionMatches(CharSequence s, int offset, String needle) {
+        for (int j = 0; j < needle.length(); j++) {
+            if (Character.toLowerCase(s.charAt(offset + j)) != needle.charAt(j)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c);
+    }
+
+    private static boolean isVpaChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '_' || c == '@';
+    }
+
+    private static long pack(int start, int end) {
+        return ((long) start << 32) | (end & 0xffffffffL);
+    }
+}
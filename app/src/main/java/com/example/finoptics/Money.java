@@ -0,0 +1,54 @@
+package com.example.finoptics;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import java.util.Locale;
+
+/**
+ * Fixed-point money helpers. Amounts are carried as {@code long} paise
+ * everywhere in the app; documents keep the legacy {@code amount} (rupees)
+ * field next to {@code amountPaise} so the Cloud Functions keep working.
+ */
+public final class Money {
+
+    public static final String FIELD_PAISE = "amountPaise";
+    public static final String FIELD_RUPEES = "amount";
+
+    private Money() {}
+
+    public static long toPaise(double rupees) {
+        return Math.round(rupees * 100);
+    }
+
+    public static double toRupees(long paise) {
+        return paise / 100.0;
+    }
+
+    /**
+     * Amount of an expense document in paise: {@code amountPaise} when present,
+     * otherwise the legacy {@code amount} (Long or Double), otherwise 0.
+     */
+    public static long paiseOf(DocumentSnapshot doc) {
+        Object exact = doc.get(FIELD_PAISE);
+        if (exact instanceof Number) return ((Number) exact).longValue();
+
+        Object legacy = doc.get(FIELD_RUPEES);
+        if (legacy instanceof Long) return (Long) legacy * 100;
+        if (legacy instanceof Number) return toPaise(((Number) legacy).doubleValue());
+        return 0;
+    }
+
+    /** "₹1,250" or "₹1,250.50" — paise shown only when non-zero. */
+    public static String format(long paise) {
+        long rupees = paise / 100;
+        long rest = Math.abs(paise % 100);
+        return rest == 0
+                ? String.format(Locale.ENGLISH, "₹%,d", rupees)
+                : String.format(Locale.ENGLISH, "₹%,d.%02d", rupees, rest);
+    }
+
+    /** Whole rupees, rounded half-up, for compact labels and progress bars. */
+    public static long roundRupees(long paise) {
+        return (paise + 50) / 100;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.finoptics;
+
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-day spend for calendar months, read from the day {@link Rollups}: one
+ * range query on the "day" field returns at most 31 small documents, however
+ * many expenses the month holds.
+ *
+ * Loaded months stay in a small LRU keyed by yyyyMM, concurrent requests for
+ * one month share a query, and callers prefetch the neighbours of the month
+ * on screen so paging back and forth doesn't wait on the network.
+ * Main thread only.
+ */
+public final class MonthLoader {
+
+    private static final String TAG = "FinOptics_MonthLoader";
+
+    // The month on screen, both neighbours and a little history
+    private static final int CAPACITY = 6;
+
+    /** Receives paise per day of month, indexed 1..31; null if the read failed. */
+    public interface Callback {
+        void onLoaded(int yyyyMM, @Nullable long[] dailyPaise);
+    }
+
+    private final String uid;
+
+    private final Map<Integer, long[]> cache = new LinkedHashMap<Integer, long[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, long[]> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    // yyyyMM -> callers waiting on the query already running for it
+    private final Map<Integer, List<Callback>> inFlight = new HashMap<>();
+
+    public MonthLoader(String uid) {
+        this.uid = uid;
+    }
+
+    /** yyyyMM of the month containing {@code cal}. */
+    public static int key(Calendar cal) {
+        return cal.get(Calendar.YEAR) * 100 + cal.get(Calendar.MONTH) + 1;
+    }
+
+    /** The month {@code months} away from {@code yyyyMM}. */
+    public static int shift(int yyyyMM, int months) {
+        int index = (yyyyMM / 100) * 12 + (yyyyMM % 100 - 1) + months;
+        return (index / 12) * 100 + index % 12 + 1;
+    }
+
+    /** Delivers a cached month synchronously, otherwise once its query returns. */
+    @MainThread
+    public void load(int yyyyMM, Callback callback) {
+        long[] cached = cache.get(yyyyMM);
+        if (cached != null) {
+            callback.onLoaded(yyyyMM, cached);
+            return;
+        }
+        fetch(yyyyMM).add(callback);
+    }
+
+    /** Warms the cache for a month the user is likely to page to. */
+    @MainThread
+    public void prefetch(int yyyyMM) {
+        if (!cache.containsKey(yyyyMM)) fetch(yyyyMM);
+    }
+
+    // Waiters for this month's query, starting it if none is running
+    private List<Callback> fetch(int yyyyMM) {
+        List<Callback> waiters = inFlight.get(yyyyMM);
+        if (waiters != null) return waiters;
+
+        List<Callback> started = new ArrayList<>();
+        inFlight.put(yyyyMM, started);
+
+        Rollups.collection(uid)
+                .whereGreaterThanOrEqualTo("day", yyyyMM * 100L + 1)
+                .whereLessThanOrEqualTo("day", yyyyMM * 100L + 31)
+                .get()
+                .addOnCompleteListener(task -> {
+                    inFlight.remove(yyyyMM);
+                    long[] daily = null;
+                    if (task.isSuccessful()) {
+                        daily = new long[32];
+                        for (DocumentSnapshot doc : task.getResult().getDocuments()) {
+                            Long day = doc.getLong("day");
+                            if (day != null) daily[(int) (day % 100)] = Rollups.totalPaise(doc);
+                        }
+                        cache.put(yyyyMM, daily);
+                    } else {
+                        Log.e(TAG, "Month " + yyyyMM + " not loaded", task.getException());
+                    }
+                    for (Callback c : started) c.onLoaded(yyyyMM, daily);
+                });
+        return started;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.finoptics;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * The one HTTP client every cloud call goes through.
+ *
+ * A single OkHttpClient means one connection pool and one dispatcher for the
+ * whole app, so TLS sessions and HTTP/2 connections to Cloud Run / Cloud
+ * Functions are reused across screens instead of being set up per click.
+ * Also owns the timeouts and a small retry policy for transient server
+ * errors. No HTTP cache: every call is a POST, which OkHttp never caches.
+ */
+public final class NetworkGateway {
+
+    private static final String TAG = "FinOptics_Net";
+
+    public static final String GEMINI_URL = "https://geminirequest-vludjrerya-uc.a.run.app";
+    public static final String COMPUTE_BASELINE_URL =
+            "https://us-central1-finoptics-79357.cloudfunctions.net/computeBaseline";
+    public static final String AI_INSIGHT_URL =
+            "https://us-central1-finoptics-79357.cloudfunctions.net/getAiInsight";
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private static final int MAX_RETRIES = 2;
+    private static final long RETRY_BACKOFF_MS = 300;
+
+    // Response nobody reads (e.g. fire-and-forget triggers); just release the connection
+    private static final Callback DISCARD = new Callback() {
+        @Override
+        public void onFailure(@NonNull Call call, @NonNull IOException e) {
+            Log.w(TAG, "Request failed: " + call.request().url(), e);
+        }
+
+        @Override
+        public void onResponse(@NonNull Call call, @NonNull Response response) {
+            response.close();
+        }
+    };
+
+    private static NetworkGateway instance;
+
+    private final OkHttpClient client;
+
+    private NetworkGateway() {
+        client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(5, 5, TimeUnit.MINUTES))
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .writeTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                // Caps the whole call, retries included
+                .callTimeout(60, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                // Outermost, so retries reuse the token it attached
+                .addInterceptor(IdTokenProvider.get())
+                .addInterceptor(NetworkGateway::retryTransient)
+                .build();
+    }
+
+    public static synchronized NetworkGateway get(Context context) {
+        if (instance == null) instance = new NetworkGateway();
+        return instance;
+    }
+
+    public OkHttpClient client() {
+        return client;
+    }
+
+    /**
+     * POST with a JSON body. Calls to our Cloud Functions get the user's ID
+     * token attached by {@link IdTokenProvider}.
+     */
+    public Call postJson(String url, String json) {
+        return post(url, RequestBody.create(json, JSON));
+    }
+
+    public Call post(String url, RequestBody body) {
+        return client.newCall(new Request.Builder().url(url).post(body).build());
+    }
+
+    /** Sends the request and ignores the answer. */
+    public static void fireAndForget(Call call) {
+        call.enqueue(DISCARD);
+    }
+
+    // ================= RETRY POLICY =================
+
+    // Our endpoints are safe to repeat: classifiers and baseline recomputation
+    private static Response retryTransient(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        IOException lastError = null;
+
+        for (int attempt = 0; attempt <= MAX_RETRIES; attempt++) {
+            if (attempt > 0) backoff(attempt);
+            try {
+                Response response = chain.proceed(request);
+                if (!isTransient(response.code()) || attempt == MAX_RETRIES) return response;
+                response.close();
+            } catch (IOException e) {
+                lastError = e;
+            }
+        }
+        throw lastError != null ? lastError : new IOException("Retries exhausted");
+    }
+
+    private static boolean isTransient(int code) {
+        return code == 429 || code == 502 || code == 503 || code == 504;
+    }
+
+    private static void backoff(int attempt) throws IOException {
+        try {
+            Thread.sleep(RETRY_BACKOFF_MS << (attempt - 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted during retry", e);
+        }
+    }
+}
@@ -0,0 +1,565 @@
+package com.example.finoptics;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Spend totals materialized at write time under Users/{uid}/Rollups:
+ *
+ *   day-yyyyMMdd   { totalPaise, count, day }
+ *   month-yyyyMM   { totalPaise, count, month, categories: { Food: { paise, count }, ... } }
+ *
+ * Every expense write carries its rollup FieldValue.increment()s in the same
+ * WriteBatch, committed through {@link Delta#commit}, so the dashboards read
+ * one small document per day or month instead of summing expenses, however
+ * long the history gets. Day and month boundaries follow the device time
+ * zone, as the screens do.
+ *
+ * Accounts that predate rollups get them computed once from history by
+ * {@link #ensureBuilt}.
+ */
+public final class Rollups {
+
+    private static final String TAG = "FinOptics_Rollups";
+
+    public static final String FIELD_TOTAL = "totalPaise";
+    public static final String FIELD_COUNT = "count";
+    public static final String FIELD_CATEGORIES = "categories";
+    public static final String FIELD_CATEGORY_PAISE = "paise";
+
+    // Firestore caps a batch at 500 writes
+    static final int MAX_BATCH_WRITES = 500;
+
+    // Day + month doc, twice when the expense replaces an older version of itself
+    private static final int MAX_DOCS_PER_EXPENSE = 4;
+
+    // Bump to recompute every account's rollups from history
+    private static final int VERSION = 1;
+
+    // Rescans after the first rebuild pass before giving up until the next start
+    private static final int MAX_REBUILD_PASSES = 5;
+    private static final String META_DOC = "meta";
+    private static final String PREFS = "Rollups";
+    private static final String KEY_BUILT_FOR = "builtFor";
+
+    private static final long READ_TIMEOUT_MS = 10_000;
+    private static final int PAGE_SIZE = 500;
+    private static final int REBUILD_BATCH_SIZE = 400;
+
+    private static final AtomicBoolean building = new AtomicBoolean(false);
+
+    // Orders increment commits against the rebuild's absolute writes
+    private static final Object WRITE_LOCK = new Object();
+
+    // While a rebuild runs: rollup ids that increment commits touched since its last write
+    private static String rebuildingUid;
+    private static Set<String> touched;
+
+    private Rollups() {}
+
+    // ================= REFERENCES =================
+
+    public static CollectionReference collection(String uid) {
+        return FirebaseFirestore.getInstance()
+                .collection("Users").document(uid).collection("Rollups");
+    }
+
+    /** Rollup of the day containing {@code millis}. */
+    public static DocumentReference day(String uid, long millis) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(millis);
+        return collection(uid).document(dayId(cal));
+    }
+
+    /** Rollup of the month containing {@code millis}. */
+    public static DocumentReference month(String uid, long millis) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(millis);
+        return collection(uid).document(monthId(cal));
+    }
+
+    private static String dayId(Calendar cal) {
+        int yyyyMMdd = cal.get(Calendar.YEAR) * 10000
+                + (cal.get(Calendar.MONTH) + 1) * 100
+                + cal.get(Calendar.DAY_OF_MONTH);
+        return "day-" + yyyyMMdd;
+    }
+
+    private static String monthId(Calendar cal) {
+        return "month-" + (cal.get(Calendar.YEAR) * 100 + cal.get(Calendar.MONTH) + 1);
+    }
+
+    // ================= READING =================
+
+    /** Total spend in a day or month rollup; 0 for a missing document. */
+    public static long totalPaise(@Nullable DocumentSnapshot rollup) {
+        if (rollup == null || !rollup.exists()) return 0;
+        Long total = rollup.getLong(FIELD_TOTAL);
+        return total != null ? total : 0;
+    }
+
+    /**
+     * Totals from a rollup snapshot or, while it doesn't exist yet (a new
+     * period, or history not backfilled), from {@link Aggregations} over the
+     * same range.
+     */
+    @MainThread
+    public static void totals(DocumentSnapshot rollup, String uid, long fromMs, long toMs,
+                              AggregationService.Callback callback) {
+        if (rollup.exists()) {
+            Long count = rollup.getLong(FIELD_COUNT);
+            callback.onResult(new AggregationService.Result(totalPaise(rollup), count != null ? count : 0));
+        } else {
+            Aggregations.get().aggregate(uid, fromMs, toMs, null, callback);
+        }
+    }
+
+    /** Receives category -> paise on the main thread. */
+    public interface CategoryCallback {
+        void onResult(Map<String, Long> totals);
+    }
+
+    /**
+     * Category totals from a month rollup or, while it doesn't exist yet, from
+     * one {@link Aggregations} query per category over that month. Categories
+     * whose aggregation fails are left out.
+     */
+    @MainThread
+    public static void categoryTotals(DocumentSnapshot month, String uid, long millis,
+                                      CategoryCallback callback) {
+        if (month.exists()) {
+            callback.onResult(categoryTotals(month));
+            return;
+        }
+
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(millis);
+        cal.set(Calendar.DAY_OF_MONTH, 1);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        long from = cal.getTimeInMillis();
+        cal.add(Calendar.MONTH, 1);
+        long to = cal.getTimeInMillis();
+
+        // Everything normalizeCategory can produce
+        List<String> categories = new ArrayList<>(Arrays.asList(CategoryClassifier.CATEGORIES));
+        categories.add("Other");
+
+        Map<String, Long> totals = new HashMap<>();
+        int[] pending = {categories.size()};
+        for (String category : categories) {
+            Aggregations.get().aggregate(uid, from, to, category, result -> {
+                if (result != null && result.sumPaise > 0) totals.put(category, result.sumPaise);
+                if (--pending[0] == 0) callback.onResult(totals);
+            });
+        }
+    }
+
+    /** Category -> paise from a month rollup, empty categories left out. */
+    public static Map<String, Long> categoryTotals(@Nullable DocumentSnapshot month) {
+        Map<String, Long> totals = new HashMap<>();
+        if (month == null || !month.exists()) return totals;
+
+        Object categories = month.get(FIELD_CATEGORIES);
+        if (!(categories instanceof Map)) return totals;
+        for (Map.Entry<?, ?> e : ((Map<?, ?>) categories).entrySet()) {
+            if (!(e.getValue() instanceof Map)) continue;
+            Object paise = ((Map<?, ?>) e.getValue()).get(FIELD_CATEGORY_PAISE);
+            if (paise instanceof Number && ((Number) paise).longValue() > 0) {
+                totals.put(String.valueOf(e.getKey()), ((Number) paise).longValue());
+            }
+        }
+        return totals;
+    }
+
+    // ================= WRITING =================
+
+    /**
+     * Rollup changes for a set of expense writes, coalesced per document so a
+     * burst of same-day expenses costs one rollup write, not one each.
+     */
+    public static final class Delta {
+        private final Calendar cal = Calendar.getInstance();
+
+        // rollup doc id -> {paise, count}
+        private final Map<String, long[]> totals = new LinkedHashMap<>();
+        // month doc id -> category -> {paise, count}
+        private final Map<String, Map<String, long[]>> categories = new HashMap<>();
+
+        /** Adds (sign +1) or takes back (sign -1) one expense. */
+        public Delta add(long paise, @Nullable String category, long millis, int sign) {
+            cal.setTimeInMillis(millis);
+            String month = monthId(cal);
+            bump(totals, dayId(cal), paise * sign, sign);
+            bump(totals, month, paise * sign, sign);
+
+            if (category != null) {
+                Map<String, long[]> byCategory = categories.get(month);
+                if (byCategory == null) {
+                    byCategory = new HashMap<>();
+                    categories.put(month, byCategory);
+                }
+                bump(byCategory, category, paise * sign, sign);
+            }
+            return this;
+        }
+
+        public Delta add(Transaction t, int sign) {
+            if (t.getTimestamp() == null) return this;
+            return add(t.getAmountPaise(), t.getCategory(), t.getTimestamp().toDate().getTime(), sign);
+        }
+
+        /** Adds or takes back a stored expense; no-op for a missing document. */
+        public Delta add(@Nullable DocumentSnapshot expense, int sign) {
+            if (expense == null || !expense.exists()) return this;
+            return add(Money.paiseOf(expense), expense.getString("category"),
+                    Timestamps.millisOf(expense), sign);
+        }
+
+        /** Rollup documents this delta may write (those netting to zero are skipped). */
+        public int documents() {
+            return totals.size();
+        }
+
+        /**
+         * Adds the increments to the batch carrying the expense writes and
+         * commits it. Always commit rollup-carrying batches through here, so a
+         * running {@link #ensureBuilt} rebuild can't overwrite the increments.
+         */
+        public Task<Void> commit(WriteBatch batch, String uid) {
+            synchronized (WRITE_LOCK) {
+                writeTo(batch, uid);
+                if (touched != null && uid.equals(rebuildingUid)) touched.addAll(totals.keySet());
+                return batch.commit();
+            }
+        }
+
+        private void writeTo(WriteBatch batch, String uid) {
+            CollectionReference rollups = collection(uid);
+            for (Map.Entry<String, long[]> e : totals.entrySet()) {
+                Map<String, Object> data = fields(e.getKey(), e.getValue(), false);
+                if (data != null) batch.set(rollups.document(e.getKey()), data, SetOptions.merge());
+            }
+        }
+
+        // Increments (or absolute values for a rebuild); null when nothing changes
+        @Nullable
+        private Map<String, Object> fields(String id, long[] total, boolean absolute) {
+            Map<String, Object> byCategory = new HashMap<>();
+            Map<String, long[]> cats = categories.get(id);
+            if (cats != null) {
+                for (Map.Entry<String, long[]> c : cats.entrySet()) {
+                    long[] v = c.getValue();
+                    if (!absolute && v[0] == 0 && v[1] == 0) continue;
+                    Map<String, Object> entry = new HashMap<>();
+                    entry.put(FIELD_CATEGORY_PAISE, value(v[0], absolute));
+                    entry.put(FIELD_COUNT, value(v[1], absolute));
+                    byCategory.put(c.getKey(), entry);
+                }
+            }
+            if (!absolute && total[0] == 0 && total[1] == 0 && byCategory.isEmpty()) return null;
+
+            Map<String, Object> data = new HashMap<>();
+            data.put(FIELD_TOTAL, value(total[0], absolute));
+            data.put(FIELD_COUNT, value(total[1], absolute));
+            int dash = id.indexOf('-');
+            data.put(id.substring(0, dash), Long.parseLong(id.substring(dash + 1)));
+            if (!byCategory.isEmpty()) data.put(FIELD_CATEGORIES, byCategory);
+            return data;
+        }
+
+        private static Object value(long v, boolean absolute) {
+            return absolute ? (Object) v : FieldValue.increment(v);
+        }
+
+        private static void bump(Map<String, long[]> map, String key, long paise, int count) {
+            long[] v = map.get(key);
+            if (v == null) {
+                v = new long[2];
+                map.put(key, v);
+            }
+            v[0] += paise;
+            v[1] += count;
+        }
+    }
+
+    /**
+     * Point-reads the given expenses, so a write that may overwrite one of
+     * them can take its old contribution back. Unreadable ids (offline, not
+     * cached) are treated as new.
+     */
+    @WorkerThread
+    static Map<String, DocumentSnapshot> existing(CollectionReference expenses, Collection<String> ids) {
+        Map<String, DocumentSnapshot> found = new HashMap<>();
+        if (ids.isEmpty()) return found;
+
+        Map<String, Task<DocumentSnapshot>> reads = new HashMap<>();
+        for (String id : ids) reads.put(id, expenses.document(id).get());
+        try {
+            Tasks.await(Tasks.whenAll(reads.values()), READ_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            Log.w(TAG, "Some existing expenses unreadable; counting them as new", e);
+        }
+
+        for (Map.Entry<String, Task<DocumentSnapshot>> e : reads.entrySet()) {
+            Task<DocumentSnapshot> read = e.getValue();
+            if (read.isComplete() && read.isSuccessful() && read.getResult().exists()) {
+                found.put(e.getKey(), read.getResult());
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Writes expenses (doc id -> transaction, overwriting) with their rollup
+     * increments, in as many batches as the write cap needs. With
+     * {@code mayExist} the ids are read first so re-imports don't count twice.
+     * Blocks until committed.
+     */
+    @WorkerThread
+    static void commit(String uid, List<String> ids, List<Transaction> transactions,
+                       boolean mayExist) throws Exception {
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        CollectionReference expenses = db.collection("Users").document(uid).collection("Expenses");
+        Map<String, DocumentSnapshot> previous = mayExist
+                ? existing(expenses, ids) : new HashMap<>();
+
+        WriteBatch batch = db.batch();
+        Delta delta = new Delta();
+        int writes = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            if (writes + 1 + delta.documents() + MAX_DOCS_PER_EXPENSE > MAX_BATCH_WRITES) {
+                Tasks.await(delta.commit(batch, uid));
+                batch = db.batch();
+                delta = new Delta();
+                writes = 0;
+            }
+            batch.set(expenses.document(ids.get(i)), transactions.get(i));
+            delta.add(previous.get(ids.get(i)), -1).add(transactions.get(i), 1);
+            writes++;
+        }
+        if (writes > 0) Tasks.await(delta.commit(batch, uid));
+    }
+
+    // ================= BACKFILL =================
+
+    /**
+     * Computes this account's rollups from its whole history once (per
+     * {@link #VERSION}), in the background.
+     *
+     * The scan can't see expenses committed after it passed them, yet their
+     * increments could land before the absolute values overwrite them. So
+     * every rollup doc an increment commit touches meanwhile is recomputed by
+     * another pass, which reads only the days and months involved, until a
+     * pass sees no concurrent writes. Only then is the account marked built;
+     * otherwise it is rebuilt on the next start.
+     */
+    public static void ensureBuilt(Context context, String uid) {
+        if (uid == null) return;
+        SharedPreferences prefs = context.getApplicationContext()
+                .getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        if ((uid + ":" + VERSION).equals(prefs.getString(KEY_BUILT_FOR, null))) return;
+        if (!building.compareAndSet(false, true)) return;
+
+        Thread worker = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            try {
+                if (rebuild(uid)) prefs.edit().putString(KEY_BUILT_FOR, uid + ":" + VERSION).apply();
+            } catch (Exception e) {
+                // Retried on the next start
+                Log.e(TAG, "Rollup backfill failed", e);
+            } finally {
+                synchronized (WRITE_LOCK) {
+                    touched = null;
+                    rebuildingUid = null;
+                }
+                building.set(false);
+            }
+        }, "finoptics-rollups");
+        worker.start();
+    }
+
+    // True once the rollups match history and the meta version is written
+    private static boolean rebuild(String uid) throws Exception {
+        CollectionReference rollups = collection(uid);
+
+        // Another device may have built them already
+        DocumentSnapshot meta = Tasks.await(rollups.document(META_DOC).get());
+        Long version = meta.getLong("version");
+        if (version != null && version >= VERSION) return true;
+
+        synchronized (WRITE_LOCK) {
+            rebuildingUid = uid;
+            touched = new HashSet<>();
+        }
+
+        // First pass reads and writes everything; later ones only what writers touched meanwhile
+        Set<String> dirty = null;
+        for (int pass = 0; pass <= MAX_REBUILD_PASSES; pass++) {
+            Delta all = dirty == null ? scan(uid) : scan(uid, dirty);
+            dirty = writeAbsolute(uid, all, dirty);
+            if (dirty.isEmpty()) {
+                Map<String, Object> marker = new HashMap<>();
+                marker.put("version", VERSION);
+                Tasks.await(rollups.document(META_DOC).set(marker));
+                Log.d(TAG, "✅ Rollups built in " + (pass + 1) + " pass(es), "
+                        + all.documents() + " document(s)");
+                return true;
+            }
+            Log.d(TAG, dirty.size() + " rollup(s) written to during the rebuild; rescanning");
+        }
+        Log.w(TAG, "Expenses kept changing during the rollup rebuild; retrying next start");
+        return false;
+    }
+
+    private static Delta scan(String uid) throws Exception {
+        Delta all = new Delta();
+        Query expenses = FirebaseFirestore.getInstance()
+                .collection("Users").document(uid).collection("Expenses");
+        DocumentSnapshot last = null;
+        while (true) {
+            Query page = expenses.limit(PAGE_SIZE);
+            if (last != null) page = page.startAfter(last);
+            QuerySnapshot snapshot = Tasks.await(page.get());
+            for (DocumentSnapshot doc : snapshot.getDocuments()) {
+                all.add(doc, 1);
+                last = doc;
+            }
+            if (snapshot.size() < PAGE_SIZE) break;
+        }
+        return all;
+    }
+
+    // Expenses inside the given days and months only, each range read once
+    private static Delta scan(String uid, Set<String> ids) throws Exception {
+        List<long[]> ranges = new ArrayList<>();
+        for (String id : ids) {
+            long[] range = range(id);
+            if (range != null) ranges.add(range);
+        }
+        // A dirty month covers its dirty days; merge so no expense is counted twice
+        Collections.sort(ranges, (a, b) -> Long.compare(a[0], b[0]));
+        List<long[]> merged = new ArrayList<>();
+        for (long[] r : ranges) {
+            long[] tail = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (tail != null && r[0] <= tail[1]) tail[1] = Math.max(tail[1], r[1]);
+            else merged.add(r);
+        }
+
+        Delta all = new Delta();
+        CollectionReference expenses = FirebaseFirestore.getInstance()
+                .collection("Users").document(uid).collection("Expenses");
+        for (long[] r : merged) {
+            // Absolute values need the whole range, legacy epoch-millis documents included
+            scanRange(expenses, new Timestamp(new Date(r[0])), new Timestamp(new Date(r[1])), all);
+            scanRange(expenses, r[0], r[1], all);
+        }
+        return all;
+    }
+
+    private static void scanRange(CollectionReference expenses, Object from, Object to, Delta into)
+            throws Exception {
+        Query range = expenses.whereGreaterThanOrEqualTo("timestamp", from)
+                .whereLessThan("timestamp", to)
+                .orderBy("timestamp")
+                .limit(PAGE_SIZE);
+        DocumentSnapshot last = null;
+        while (true) {
+            QuerySnapshot snapshot = Tasks.await(last == null ? range.get() : range.startAfter(last).get());
+            for (DocumentSnapshot doc : snapshot.getDocuments()) {
+                into.add(doc, 1);
+                last = doc;
+            }
+            if (snapshot.size() < PAGE_SIZE) break;
+        }
+    }
+
+    // [from, to) millis of a day-yyyyMMdd or month-yyyyMM document; null for anything else
+    @Nullable
+    private static long[] range(String id) {
+        int dash = id.indexOf('-');
+        if (dash < 0) return null;
+        long n = Long.parseLong(id.substring(dash + 1));
+        boolean day = id.startsWith("day-");
+
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        if (day) cal.set((int) (n / 10000), (int) (n / 100 % 100) - 1, (int) (n % 100));
+        else cal.set((int) (n / 100), (int) (n % 100) - 1, 1);
+        long from = cal.getTimeInMillis();
+        cal.add(day ? Calendar.DAY_OF_MONTH : Calendar.MONTH, 1);
+        return new long[]{from, cal.getTimeInMillis()};
+    }
+
+    /**
+     * Overwrites rollups with absolute values from a scan: all of them, or
+     * only {@code only} (zeroing ones the scan no longer has). Returns the ids
+     * increment commits touched since the previous call; those may have been
+     * missed by this scan.
+     */
+    private static Set<String> writeAbsolute(String uid, Delta all, @Nullable Set<String> only)
+            throws Exception {
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        CollectionReference rollups = collection(uid);
+        Collection<String> ids = only != null ? only : all.totals.keySet();
+
+        List<Task<Void>> commits = new ArrayList<>();
+        Set<String> dirty;
+        // Issued under the lock: every increment commit is queued either before
+        // these writes (and so recorded as dirty) or after them (and adds on top)
+        synchronized (WRITE_LOCK) {
+            WriteBatch batch = db.batch();
+            int inBatch = 0;
+            for (String id : ids) {
+                long[] total = all.totals.get(id);
+                batch.set(rollups.document(id), all.fields(id, total != null ? total : new long[2], true));
+                if (++inBatch == REBUILD_BATCH_SIZE) {
+                    commits.add(batch.commit());
+                    batch = db.batch();
+                    inBatch = 0;
+                }
+            }
+            if (inBatch > 0) commits.add(batch.commit());
+            dirty = touched;
+            touched = new HashSet<>();
+        }
+        for (Task<Void> commit : commits) Tasks.await(commit);
+        return dirty;
+    }
+}
@@ -9,22 +9,15 @@ import android.util.Log;
 import android.content.SharedPreferences;
 
 import com.google.firebase.Timestamp;
-import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 
 import java.util.Arrays;
-import java.util.Calendar;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class SMSReceiver extends BroadcastReceiver {
 
     private static final String TAG = "FinOptics_SMSReceiver";
-    private FirebaseFirestore db = FirebaseFirestore.getInstance();
 
     private List<String> allowedSenders = Arrays.asList(
             "VM-GPAYBNK", "VM-PAYTM", "VM-PHONEPE", "VM-ICICIB", "VM-HDFCBK"
@@ -43,6 +36,29 @@ public class SMSReceiver extends BroadcastReceiver {
 
         if (pdus == null) return;
 
+        // Hand the raw PDUs to the ingestion pool; the broadcast stays alive
+        // until the work has been queued for commit.
+        Context appContext = context.getApplicationContext();
+        PendingResult pendingResult = goAsync();
+
+        IngestionExecutor.execute(() -> {
+            try {
+                handlePdus(appContext, pdus, format);
+            } catch (Exception e) {
+                Log.e(TAG, "SMS ingestion failed", e);
+            } finally {
+                pendingResult.finish();
+            }
+        });
+    }
+
+    private void handlePdus(Context context, Object[] pdus, String format) {
+
+        // A long SMS arrives as several PDUs; stitch them back into one message
+        // per sender so it is parsed, and identified, as the inbox stores it.
+        Map<String, StringBuilder> bodies = new LinkedHashMap<>();
+        Map<String, Long> sentAt = new LinkedHashMap<>();
+
         for (Object pdu : pdus) {
 
             SmsMessage sms;
@@ -53,98 +69,53 @@ public class SMSReceiver extends BroadcastReceiver {
             }
 
             String sender = sms.getDisplayOriginatingAddress();
-            String message = sms.getMessageBody();
+            String part = sms.getMessageBody();
+            if (sender == null || part == null) continue;
+
+            StringBuilder body = bodies.get(sender);
+            if (body == null) {
+                bodies.put(sender, body = new StringBuilder());
+                sentAt.put(sender, sms.getTimestampMillis());
+            }
+            body.append(part);
+        }
+
+        for (Map.Entry<String, StringBuilder> e : bodies.entrySet()) {
+            String sender = e.getKey();
+            String message = e.getValue().toString();
 
             Log.d(TAG, "SMS received from: " + sender + " -> " + message);
 
             // if (!allowedSenders.contains(sender)) continue;
 
-            processSMS(context, message);
+            processSMS(context, message,
+                    DuplicateIndex.smsKey(sender, sentAt.get(sender), message));
         }
     }
 
-    private void processSMS(Context context, String content) {
+    private void processSMS(Context context, String content, long messageKey) {
 
-        String lowerContent = content.toLowerCase();
+        // 1. Amount, direction and merchant in one pass over precompiled patterns
+        IngestionEngine.ParsedTransaction parsed = IngestionEngine.parse(content);
 
-        // 1. Extract amount
-        Pattern p = Pattern.compile("(?:rs\\.?|inr|₹)\\s*([0-9]+(?:,[0-9]{3})*(?:\\.[0-9]{1,2})?)");
-        Matcher m = p.matcher(lowerContent);
-
-        if (!m.find()) {
+        if (parsed == null) {
             Log.d(TAG, "No amount found — ignored");
             return;
         }
 
-        double amount = parseAmount(m.group(1));
-
         // 2. STRICT income detection
-        if (isIncomingTransaction(lowerContent)) {
+        if (parsed.incoming) {
             Log.d(TAG, "Incoming transaction ignored");
             return;
         }
 
-        String merchant = extractMerchantFromSMS(lowerContent);
-
-        Log.d(TAG, "Parsed -> ₹" + amount + " Merchant: " + merchant);
-
-        saveTransaction(context, amount, "DEBIT", merchant, content);
-    }
-
-    // 🔐 VERY STRICT CREDIT FILTER
-    private boolean isIncomingTransaction(String content) {
-
-        content = content.toLowerCase();
-
-        boolean incoming =
-                content.contains("credited") ||
-                        content.contains("received") ||
-                        content.contains("refund") ||
-                        content.contains("cashback") ||
-                        content.contains("reversal");
-
-        boolean outgoing =
-                content.contains("debit") ||
-                        content.contains("debited") ||
-                        content.contains("spent") ||
-                        content.contains("paid") ||
-                        content.contains("purchase") ||
-                        content.contains("sent") ||
-                        content.contains("withdrawn") ||
-                        content.contains("transfer");
-
-        // Incoming only if no outgoing keyword exists
-        return incoming && !outgoing;
-    }
-
-    private double parseAmount(String amountStr) {
-        try {
-            return Double.parseDouble(amountStr.replace(",", ""));
-        } catch (Exception e) {
-            return 0;
-        }
-    }
-
-    private String extractMerchantFromSMS(String content) {
-        try {
-            if (content.contains(" to ")) {
-                return capitalize(content.split(" to ")[1].split(" via| on|\\.")[0].trim());
-            } else if (content.contains(" at ")) {
-                return capitalize(content.split(" at ")[1].split(" via| on|\\.")[0].trim());
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Merchant parse failed", e);
-        }
-        return "Unknown Merchant";
-    }
+        Log.d(TAG, "Parsed -> ₹" + parsed.amount + " Merchant: " + parsed.merchant);
 
-    private String capitalize(String s) {
-        if (s == null || s.isEmpty()) return "Unknown";
-        return s.substring(0, 1).toUpperCase() + s.substring(1);
+        saveTransaction(context, parsed.amount, "DEBIT", parsed.merchant, content, messageKey);
     }
 
     private void saveTransaction(Context context, double amount, String txnType,
-                                 String merchant, String content) {
+                                 String merchant, String content, long messageKey) {
 
         SharedPreferences prefs =
                 context.getSharedPreferences("FinOptics", Context.MODE_PRIVATE);
@@ -156,115 +127,27 @@ public class SMSReceiver extends BroadcastReceiver {
             return;
         }
 
-        String category = autoCategorize(content + " " + merchant);
-
-        Transaction transaction =
-                new Transaction(amount, category, merchant, Timestamp.now());
-
-        db.collection("Users")
-                .document(uid)
-                .collection("Expenses")
-                .add(transaction)
-                .addOnSuccessListener(doc -> {
-                    Log.d(TAG, "✅ TXN SAVED → ₹" + amount + " [" + category + "]");
-                    detectTopAnomaly(uid, amount, category);
-                })
-                .addOnFailureListener(e ->
-                        Log.e(TAG, "❌ TXN SAVE FAILED", e));
-    }
-
-    /* ==================== ANOMALY DETECTION ==================== */
-
-    private void detectTopAnomaly(String uid, double amount, String category) {
-
-        DocumentReference statsRef =
-                db.collection("Users").document(uid)
-                        .collection("Stats").document("baseline");
-
-        DocumentReference alertRef =
-                db.collection("Users").document(uid)
-                        .collection("Alerts").document(category);
-
-        statsRef.get().addOnSuccessListener(snapshot -> {
-
-            if (!snapshot.exists()) return;
-
-            Map<String, Object> catAvg =
-                    (Map<String, Object>) snapshot.get("categoryAverages");
-
-            if (catAvg == null || !catAvg.containsKey(category)) return;
-
-            double avg = ((Number) catAvg.get(category)).doubleValue();
-            double threshold = Math.max(avg * 1.3, avg + 100);
-
-            Calendar cal = Calendar.getInstance();
-            cal.set(Calendar.HOUR_OF_DAY, 0);
-            cal.set(Calendar.MINUTE, 0);
-            cal.set(Calendar.SECOND, 0);
-            cal.set(Calendar.MILLISECOND, 0);
-
-            Timestamp startOfToday = new Timestamp(cal.getTime());
-
-            db.collection("Users").document(uid)
-                    .collection("Expenses")
-                    .whereEqualTo("category", category)
-                    .whereGreaterThanOrEqualTo("timestamp", startOfToday)
-                    .get()
-                    .addOnSuccessListener(snapshot2 -> {
-
-                        int count = snapshot2.size();
-                        double total = 0;
-
-                        for (QueryDocumentSnapshot doc : snapshot2) {
-                            Double amt = doc.getDouble("amount");
-                            if (amt != null) total += amt;
-                        }
-
-                        if (total < threshold && count < 5) return;
-
-                        Map<String, Object> alert = new HashMap<>();
-                        alert.put("type", total >= threshold ? "Amount Spike" : "Frequency Spike");
-                        alert.put("category", category);
-                        alert.put("amount", total);
-                        alert.put("count", count);
-                        alert.put("timestamp", Timestamp.now());
-
-                        alertRef.set(alert);
-                    });
-        });
-    }
-
-    /* ==================== AUTO-CATEGORIZATION ==================== */
-
-    private String autoCategorize(String input) {
-
-        String text = input.toLowerCase();
-
-        Map<String, String> vendorMap = new HashMap<>();
-        vendorMap.put("zomato", "Food");
-        vendorMap.put("swiggy", "Food");
-        vendorMap.put("amazon", "Shopping");
-        vendorMap.put("flipkart", "Shopping");
-        vendorMap.put("uber", "Transport");
-        vendorMap.put("ola", "Transport");
-        vendorMap.put("blinkit", "Shopping");
-
-        for (String vendor : vendorMap.keySet()) {
-            if (text.contains(vendor)) return vendorMap.get(vendor);
+        // Only a redelivery of this very message is dropped; a second payment of
+        // the same amount to the same merchant is a new SMS and is kept.
+        int verdict = DuplicateIndex.get(context).checkAndRecord(messageKey, amount, merchant,
+                "sms", System.currentTimeMillis());
+        if (verdict == DuplicateIndex.DUPLICATE) {
+            Log.d(TAG, "Duplicate SMS ignored");
+            return;
+        }
+        if (verdict == DuplicateIndex.SIMILAR) {
+            Log.d(TAG, "Repeat payment of ₹" + amount + " to " + merchant + " kept");
         }
 
-        Map<String, List<String>> clusters = new HashMap<>();
-        clusters.put("Food", Arrays.asList("pizza", "burger", "coffee", "tea", "dinner", "lunch"));
-        clusters.put("Transport", Arrays.asList("fuel", "petrol", "cab", "bus", "metro", "auto"));
-        clusters.put("Health", Arrays.asList("doctor", "medicine", "hospital", "gym"));
-        clusters.put("Bills", Arrays.asList("electricity", "rent", "wifi", "recharge", "gas"));
+        String category = CategorizationEngine.categorize(context, content + " " + merchant);
 
-        for (Map.Entry<String, List<String>> entry : clusters.entrySet()) {
-            for (String w : entry.getValue()) {
-                if (text.contains(w)) return entry.getKey();
-            }
-        }
+        Transaction transaction =
+                new Transaction(amount, category, merchant, Timestamp.now());
+        transaction.setSource("sms");
+        MerchantRegistry.get(context).tag(transaction, merchant);
 
-        return "Other";
+        // Journaled to disk now, committed with the rest of the burst in one batch
+        ExpenseWriteQueue.get(context).enqueue(uid, transaction);
+        Log.d(TAG, "TXN QUEUED → ₹" + amount + " [" + category + "]");
     }
 }
\ No newline at end of file
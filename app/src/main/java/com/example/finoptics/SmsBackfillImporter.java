@@ -0,0 +1,322 @@
+package com.example.finoptics;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.provider.Telephony;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One-shot import of bank messages already sitting in the SMS inbox.
+ *
+ * The inbox is streamed oldest-first through a cursor in fixed-size chunks;
+ * each chunk is parsed in parallel with the same {@link IngestionEngine} the
+ * live receiver uses, then written together with its {@link Rollups}
+ * increments. The checkpoint (date of the last committed message) is saved
+ * after every chunk, so an interrupted import resumes where it stopped.
+ *
+ * Documents are keyed by the inbox row id, so a re-run overwrites instead of
+ * duplicating (the first chunk of a run is read back so rollups aren't counted
+ * twice). Messages the live receiver already captured are stored under journal
+ * ids instead, so they are skipped two ways: recent ones by the identity key
+ * (sender, sent time, body) in {@link DuplicateIndex}, and any age by matching
+ * amount and time against the SMS expenses already stored in the chunk's range.
+ * Identity keys are recorded only once the chunk has committed.
+ */
+public final class SmsBackfillImporter {
+
+    private static final String TAG = "FinOptics_Backfill";
+    private static final String PREFS = "SmsBackfill";
+    private static final String KEY_LAST_DATE = "lastDate";
+    private static final String KEY_DONE = "done";
+
+    // Rows per cursor chunk; Rollups.commit splits it if rollups push a batch past 500 writes
+    private static final int CHUNK_SIZE = 400;
+
+    // A live capture is stamped on receipt, within moments of the inbox date
+    private static final long MATCH_SLACK_MS = 2 * 60 * 1000L;
+
+    // Sources of stored expenses that came from an SMS (CorrelationIndex merges)
+    private static final List<String> SMS_SOURCES =
+            Arrays.asList("sms", "sms+notification", "notification+sms");
+
+    private static final long READ_TIMEOUT_MS = 10_000;
+
+    private static final AtomicBoolean running = new AtomicBoolean(false);
+
+    public interface ProgressListener {
+        void onProgress(int scanned, int total, int imported);
+        void onComplete(int imported);
+    }
+
+    private SmsBackfillImporter() {}
+
+    public static boolean isDone(Context context) {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE)
+                .getBoolean(KEY_DONE, false);
+    }
+
+    /**
+     * Starts the import on its own thread unless it is already running or
+     * finished. Listener callbacks arrive on the main thread; it may be null.
+     */
+    public static void start(Context context, ProgressListener listener) {
+        Context appContext = context.getApplicationContext();
+        if (isDone(appContext) || !running.compareAndSet(false, true)) return;
+
+        Thread worker = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            try {
+                run(appContext, listener);
+            } finally {
+                running.set(false);
+            }
+        }, "finoptics-backfill");
+        worker.start();
+    }
+
+    private static void run(Context context, ProgressListener listener) {
+        String uid = context.getSharedPreferences("FinOptics", Context.MODE_PRIVATE)
+                .getString("uid", null);
+        if (uid == null) {
+            Log.e(TAG, "UID missing — backfill postponed");
+            return;
+        }
+
+        SharedPreferences checkpoint = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        long since = checkpoint.getLong(KEY_LAST_DATE, 0);
+
+        // Learned keywords are loaded once, not per message
+        CategorizationEngine.sync(context);
+
+        Handler main = new Handler(Looper.getMainLooper());
+        int threads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        ExecutorService parsers = Executors.newFixedThreadPool(threads);
+
+        MerchantRegistry merchants = MerchantRegistry.get(context);
+        DuplicateIndex captured = DuplicateIndex.get(context);
+        CollectionReference expenses = FirebaseFirestore.getInstance()
+                .collection("Users").document(uid).collection("Expenses");
+        int scanned = 0;
+        int imported = 0;
+
+        try (Cursor cursor = context.getContentResolver().query(
+                Telephony.Sms.Inbox.CONTENT_URI,
+                new String[]{Telephony.Sms._ID, Telephony.Sms.BODY, Telephony.Sms.DATE,
+                        Telephony.Sms.ADDRESS, Telephony.Sms.DATE_SENT},
+                // >= so rows sharing the checkpoint date are not lost; their ids overwrite
+                Telephony.Sms.DATE + " >= ?",
+                new String[]{String.valueOf(since)},
+                Telephony.Sms.DATE + " ASC")) {
+
+            if (cursor == null) {
+                Log.e(TAG, "SMS inbox not readable");
+                return;
+            }
+
+            int idCol = cursor.getColumnIndexOrThrow(Telephony.Sms._ID);
+            int bodyCol = cursor.getColumnIndexOrThrow(Telephony.Sms.BODY);
+            int dateCol = cursor.getColumnIndexOrThrow(Telephony.Sms.DATE);
+            int addressCol = cursor.getColumnIndexOrThrow(Telephony.Sms.ADDRESS);
+            int sentCol = cursor.getColumnIndexOrThrow(Telephony.Sms.DATE_SENT);
+            int total = cursor.getCount();
+
+            // Only the first chunk can overlap what an interrupted run already stored
+            boolean first = true;
+
+            long[] ids = new long[CHUNK_SIZE];
+            long[] dates = new long[CHUNK_SIZE];
+            String[] bodies = new String[CHUNK_SIZE];
+            long[] keys = new long[CHUNK_SIZE];
+            long[] committedKeys = new long[CHUNK_SIZE];
+            long[] committedDates = new long[CHUNK_SIZE];
+
+            boolean more = true;
+            while (more) {
+                // ---- Read one chunk off the cursor ----
+                int n = 0;
+                while (n < CHUNK_SIZE && (more = cursor.moveToNext())) {
+                    ids[n] = cursor.getLong(idCol);
+                    bodies[n] = cursor.getString(bodyCol);
+                    dates[n] = cursor.getLong(dateCol);
+                    keys[n] = DuplicateIndex.smsKey(cursor.getString(addressCol),
+                            cursor.getLong(sentCol), bodies[n]);
+                    n++;
+                }
+                if (n == 0) break;
+
+                // ---- Parse it in parallel ----
+                Transaction[] parsed = parseChunk(parsers, threads, bodies, dates, n);
+
+                // ---- Drop what the live receiver already stored ----
+                Map<Long, List<Long>> live = hasDebits(parsed, n)
+                        ? liveCaptures(expenses, dates[0], dates[n - 1])
+                        : Collections.<Long, List<Long>>emptyMap();
+
+                // ---- Commit with rollups, then checkpoint ----
+                List<String> docIds = new ArrayList<>();
+                List<Transaction> writes = new ArrayList<>();
+                int committed = 0;
+                for (int i = 0; i < n; i++) {
+                    Transaction t = parsed[i];
+                    if (t == null || alreadyCaptured(captured, keys[i], dates[i])) continue;
+                    if (claim(live, t.getAmountPaise(), dates[i])) continue;
+                    merchants.tag(t, t.getNote());
+                    docIds.add("sms-" + ids[i]);
+                    writes.add(t);
+                    committedKeys[committed] = keys[i];
+                    committedDates[committed] = dates[i];
+                    committed++;
+                }
+                if (!writes.isEmpty()) Rollups.commit(uid, docIds, writes, first);
+                first = false;
+
+                // Only after the commit: a run killed before it must not leave
+                // these messages marked as captured
+                captured.recordAll(committedKeys, committedDates, committed);
+
+                scanned += n;
+                imported += writes.size();
+                checkpoint.edit().putLong(KEY_LAST_DATE, dates[n - 1]).apply();
+
+                if (listener != null) {
+                    int s = scanned, done = imported;
+                    main.post(() -> listener.onProgress(s, total, done));
+                }
+            }
+
+            checkpoint.edit().putBoolean(KEY_DONE, true).apply();
+            Log.d(TAG, "✅ Backfill complete: " + imported + " of " + scanned + " message(s)");
+
+            if (listener != null) {
+                int done = imported;
+                main.post(() -> listener.onComplete(done));
+            }
+
+        } catch (Exception e) {
+            // Checkpoint already covers every committed batch; next start resumes
+            Log.e(TAG, "Backfill stopped after " + scanned + " message(s)", e);
+        } finally {
+            parsers.shutdown();
+        }
+    }
+
+    // Splits the chunk into one contiguous slice per worker; results keep cursor order
+    private static Transaction[] parseChunk(ExecutorService parsers, int threads,
+                                            String[] bodies, long[] dates, int n)
+            throws Exception {
+        Transaction[] out = new Transaction[n];
+        int slice = (n + threads - 1) / threads;
+
+        List<Future<?>> futures = new ArrayList<>(threads);
+        for (int from = 0; from < n; from += slice) {
+            int start = from, end = Math.min(n, from + slice);
+            futures.add(parsers.submit(() -> {
+                for (int i = start; i < end; i++) out[i] = parse(bodies[i], dates[i]);
+            }));
+        }
+        for (Future<?> f : futures) f.get();
+        return out;
+    }
+
+    // Same rules as SMSReceiver: debits with an amount only
+    private static Transaction parse(String body, long date) {
+        if (body == null) return null;
+
+        IngestionEngine.ParsedTransaction parsed = IngestionEngine.parse(body);
+        if (parsed == null || parsed.incoming) return null;
+
+        String category = CategorizationEngine.match(body + " " + parsed.merchant);
+
+        Transaction t = new Transaction(parsed.amount,
+                category != null ? category : "Other",
+                parsed.merchant,
+                new Timestamp(new Date(date)));
+        t.setSource("sms");
+        return t;
+    }
+
+    // The index only remembers a day; older messages are matched by liveCaptures
+    private static boolean alreadyCaptured(DuplicateIndex captured, long messageKey, long date) {
+        if (System.currentTimeMillis() - date > DuplicateIndex.RETENTION_MS) return false;
+        return captured.contains(messageKey);
+    }
+
+    private static boolean hasDebits(Transaction[] parsed, int n) {
+        for (int i = 0; i < n; i++) {
+            if (parsed[i] != null) return true;
+        }
+        return false;
+    }
+
+    /**
+     * paise -> capture times of the SMS expenses the live receiver stored
+     * between {@code from} and {@code to} (plus slack). Rows this importer
+     * wrote itself ("sms-" ids) are left out; they are overwritten by id.
+     *
+     * Only the timestamp range goes to Firestore, which its single-field
+     * index serves; the source is checked here, since source + range would
+     * need a composite index.
+     */
+    private static Map<Long, List<Long>> liveCaptures(CollectionReference expenses,
+                                                      long from, long to) throws Exception {
+        QuerySnapshot snapshot = Tasks.await(expenses
+                        .whereGreaterThanOrEqualTo("timestamp",
+                                new Timestamp(new Date(from - MATCH_SLACK_MS)))
+                        .whereLessThanOrEqualTo("timestamp",
+                                new Timestamp(new Date(to + MATCH_SLACK_MS)))
+                        .get(),
+                READ_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        Map<Long, List<Long>> live = new HashMap<>();
+        for (DocumentSnapshot doc : snapshot.getDocuments()) {
+            if (doc.getId().startsWith("sms-") || !SMS_SOURCES.contains(doc.getString("source"))) {
+                continue;
+            }
+            long paise = Money.paiseOf(doc);
+            List<Long> times = live.get(paise);
+            if (times == null) {
+                times = new ArrayList<>();
+                live.put(paise, times);
+            }
+            times.add(Timestamps.millisOf(doc));
+        }
+        return live;
+    }
+
+    // Consumes one stored capture of this amount near this date, so each matches once
+    private static boolean claim(Map<Long, List<Long>> live, long paise, long date) {
+        List<Long> times = live.get(paise);
+        if (times == null) return false;
+        for (int i = 0; i < times.size(); i++) {
+            if (Math.abs(times.get(i) - date) <= MATCH_SLACK_MS) {
+                times.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+}
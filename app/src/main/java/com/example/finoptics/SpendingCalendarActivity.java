@@ -8,16 +8,12 @@ import android.widget.TextView;
 
 import androidx.appcompat.app.AppCompatActivity;
 
-import com.google.firebase.Timestamp;
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Locale;
-import java.util.Map;
 
 public class SpendingCalendarActivity extends AppCompatActivity {
 
@@ -26,10 +22,14 @@ public class SpendingCalendarActivity extends AppCompatActivity {
     private ImageView btnPrevMonth, btnNextMonth, btnBack;
 
     private Calendar currentMonth;
-    private FirebaseFirestore db;
     private String userId;
 
-    private final Map<String, Double> dailyTotals = new HashMap<>();
+    // Paise spent per day of month, indexed 1..31
+    private final long[] dailyPaise = new long[32];
+
+    // Cached, prefetching per-month loads; yyyyMM most recently asked for
+    private MonthLoader monthLoader;
+    private int requestedMonth;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -42,8 +42,8 @@ public class SpendingCalendarActivity extends AppCompatActivity {
         btnNextMonth = findViewById(R.id.btnNextMonth);
         btnBack = findViewById(R.id.btnBack);
 
-        db = FirebaseFirestore.getInstance();
         userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
+        monthLoader = new MonthLoader(userId);
 
         currentMonth = Calendar.getInstance();
 
@@ -60,51 +60,31 @@ public class SpendingCalendarActivity extends AppCompatActivity {
     }
 
     private void loadMonth() {
-        dailyTotals.clear();
+        Arrays.fill(dailyPaise, 0);
         calendarGrid.removeAllViews();
 
         SimpleDateFormat sdf = new SimpleDateFormat("MMMM yyyy", Locale.getDefault());
         tvMonthYear.setText(sdf.format(currentMonth.getTime()));
 
-        Calendar start = (Calendar) currentMonth.clone();
-        start.set(Calendar.DAY_OF_MONTH, 1);
-        start.set(Calendar.HOUR_OF_DAY, 0);
-        start.set(Calendar.MINUTE, 0);
-        start.set(Calendar.SECOND, 0);
-
-        Calendar end = (Calendar) start.clone();
-        end.add(Calendar.MONTH, 1);
-
-        fetchDailyTotals(start.getTimeInMillis(), end.getTimeInMillis());
+        fetchDailyTotals(MonthLoader.key(currentMonth));
     }
 
-    private void fetchDailyTotals(long start, long end) {
-
-        db.collection("Users")
-                .document(userId)
-                .collection("Expenses")
-                .get()
-                .addOnSuccessListener(snapshot -> {
-
-                    for (QueryDocumentSnapshot doc : snapshot) {
-                        Timestamp ts = doc.getTimestamp("timestamp");
-                        Double amt = doc.getDouble("amount");
-
-                        if (ts == null || amt == null) continue;
-
-                        long time = ts.toDate().getTime();
-                        if (time < start || time >= end) continue;
+    private void fetchDailyTotals(int yyyyMM) {
+        requestedMonth = yyyyMM;
 
-                        Calendar c = Calendar.getInstance();
-                        c.setTimeInMillis(time);
-                        String key = c.get(Calendar.DAY_OF_MONTH) + "";
+        // At most 31 day rollups per month, cached; instant when already loaded
+        monthLoader.load(yyyyMM, (month, daily) -> {
+            // Skip answers for a month the user has already paged away from
+            if (daily == null || month != requestedMonth || isFinishing()) return;
 
-                        dailyTotals.put(key,
-                                dailyTotals.getOrDefault(key, 0.0) + amt);
-                    }
+            System.arraycopy(daily, 0, dailyPaise, 0, dailyPaise.length);
+            calendarGrid.removeAllViews();
+            renderCalendar();
 
-                    renderCalendar();
-                });
+            // Have the neighbours ready before the user pages to them
+            monthLoader.prefetch(MonthLoader.shift(month, -1));
+            monthLoader.prefetch(MonthLoader.shift(month, 1));
+        });
     }
 
     private void renderCalendar() {
@@ -114,16 +94,15 @@ public class SpendingCalendarActivity extends AppCompatActivity {
         int firstDayOfWeek = temp.get(Calendar.DAY_OF_WEEK) - 1;
         int daysInMonth = temp.getActualMaximum(Calendar.DAY_OF_MONTH);
 
-        double max = 1;
-        for (double v : dailyTotals.values()) max = Math.max(max, v);
+        long max = 1;
+        for (long v : dailyPaise) max = Math.max(max, v);
 
         for (int i = 0; i < firstDayOfWeek; i++) {
             addEmptyCell();
         }
 
         for (int day = 1; day <= daysInMonth; day++) {
-            double amount = dailyTotals.getOrDefault(String.valueOf(day), 0.0);
-            addDayCell(day, amount, max);
+            addDayCell(day, dailyPaise[day], max);
         }
     }
 
@@ -137,7 +116,7 @@ public class SpendingCalendarActivity extends AppCompatActivity {
         calendarGrid.addView(v);
     }
 
-    private void addDayCell(int day, double amount, double max) {
+    private void addDayCell(int day, long amountPaise, long maxPaise) {
 
         TextView tv = new TextView(this);
         tv.setText(String.valueOf(day));
@@ -145,7 +124,7 @@ public class SpendingCalendarActivity extends AppCompatActivity {
         tv.setTextSize(12);
         tv.setGravity(android.view.Gravity.CENTER);
 
-        double intensity = amount / max;
+        double intensity = (double) amountPaise / maxPaise;
         tv.setBackgroundColor(getHeatColor(intensity));
 
         GridLayout.LayoutParams params = new GridLayout.LayoutParams();
@@ -0,0 +1,357 @@
+package com.example.finoptics;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.google.firebase.Timestamp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Imports a bank / UPI statement exported as CSV.
+ *
+ * The file is read through a streaming RFC 4180 tokenizer, one record at a
+ * time, so memory stays flat regardless of statement length. Debit rows are
+ * categorized locally and written in WriteBatch chunks along with their
+ * {@link Rollups} increments; the reader waits for
+ * each commit before producing the next chunk (back-pressure), so at most one
+ * batch is ever in flight.
+ *
+ * Document ids are derived from the row contents, so importing the same or an
+ * overlapping statement twice overwrites instead of duplicating; each chunk's
+ * ids are read back first so rollups move rather than double.
+ */
+public final class StatementCsvImporter {
+
+    private static final String TAG = "FinOptics_CsvImport";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // Rows per chunk; Rollups.commit splits it if rollups push a batch past 500 writes
+    private static final int BATCH_SIZE = 400;
+
+    // Header aliases seen in Indian bank exports (matched as lowercase substrings)
+    private static final String[] DATE_HEADERS = {"txn date", "transaction date", "value date", "date"};
+    private static final String[] DESC_HEADERS = {"narration", "description", "particulars", "remarks", "details"};
+    private static final String[] DEBIT_HEADERS = {"withdrawal", "debit", "dr amount"};
+    private static final String[] CREDIT_HEADERS = {"deposit", "credit", "cr amount"};
+    private static final String[] AMOUNT_HEADERS = {"amount"};
+    private static final String[] TYPE_HEADERS = {"dr/cr", "cr/dr", "debit/credit", "type"};
+
+    private static final String[] DATE_FORMATS = {
+            "dd/MM/yyyy", "dd/MM/yy", "dd-MM-yyyy", "dd-MM-yy", "yyyy-MM-dd",
+            "dd MMM yyyy", "dd-MMM-yyyy", "dd-MMM-yy", "dd MMM yy"
+    };
+
+    // "01/02/24" also parses under dd/MM/yyyy as year 24; reject and try the next format
+    private static final long MIN_DATE_MS = 631152000000L; // 1990-01-01
+
+    public interface Listener {
+        void onProgress(int rows, int imported);
+        void onComplete(int rows, int imported);
+        void onError(Exception e);
+    }
+
+    private StatementCsvImporter() {}
+
+    /** Runs the import on its own thread; callbacks arrive on the main thread. */
+    public static void start(Context context, Uri file, Listener listener) {
+        Context appContext = context.getApplicationContext();
+        Handler main = new Handler(Looper.getMainLooper());
+
+        new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            try (InputStream in = appContext.getContentResolver().openInputStream(file)) {
+                if (in == null) throw new IOException("Statement not readable");
+                run(appContext, new BufferedReader(new InputStreamReader(in, UTF8)), main, listener);
+            } catch (Exception e) {
+                Log.e(TAG, "Statement import failed", e);
+                main.post(() -> listener.onError(e));
+            }
+        }, "finoptics-csv-import").start();
+    }
+
+    private static void run(Context context, Reader reader, Handler main, Listener listener)
+            throws Exception {
+        String uid = context.getSharedPreferences("FinOptics", Context.MODE_PRIVATE)
+                .getString("uid", null);
+        if (uid == null) throw new IllegalStateException("UID missing");
+
+        CsvTokenizer csv = new CsvTokenizer(reader);
+        List<String> fields = new ArrayList<>();
+
+        if (!csv.next(fields)) throw new IOException("Empty statement");
+        Columns cols = Columns.from(fields);
+        if (cols.date < 0 || cols.desc < 0 || (cols.debit < 0 && cols.amount < 0)) {
+            throw new IOException("Unrecognised statement header: " + fields);
+        }
+
+        // Learned keywords are loaded once, not per row
+        CategorizationEngine.sync(context);
+
+        SimpleDateFormat[] formats = dateFormats();
+        MerchantRegistry merchants = MerchantRegistry.get(context);
+
+        // fingerprint -> occurrences, so two identical rows in one file stay two expenses
+        Map<Long, Integer> seen = new HashMap<>();
+
+        List<String> ids = new ArrayList<>();
+        List<Transaction> batch = new ArrayList<>();
+        int rows = 0;
+        int imported = 0;
+
+        while (csv.next(fields)) {
+            rows++;
+            Transaction t = toTransaction(fields, cols, formats);
+            if (t == null) continue;
+            // The narration is mostly rail noise ("UPI/DR/4102/ZOMATO/YESB/zomato@yesb");
+            // register only the payee the tokenizer finds in it
+            merchants.tag(t, MerchantTokenizer.extract(t.getNote()));
+
+            ids.add(documentId(t, seen));
+            batch.add(t);
+
+            if (batch.size() == BATCH_SIZE) {
+                // Back-pressure: don't read further until this chunk is stored.
+                // Re-importing a statement overwrites, so read back before counting rollups
+                Rollups.commit(uid, ids, batch, true);
+                imported += batch.size();
+                ids.clear();
+                batch.clear();
+
+                int r = rows, done = imported;
+                main.post(() -> listener.onProgress(r, done));
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            Rollups.commit(uid, ids, batch, true);
+            imported += batch.size();
+        }
+
+        // Usually a layout we misread (wrong sign convention, credits column)
+        if (imported == 0) throw new IOException("No debit rows found in " + rows + " row(s)");
+
+        Log.d(TAG, "✅ Statement imported: " + imported + " of " + rows + " row(s)");
+        int r = rows, done = imported;
+        main.post(() -> listener.onComplete(r, done));
+    }
+
+    // ================= ROW MAPPING =================
+
+    // Debits only; credits (salary, refunds) are not expenses
+    static Transaction toTransaction(List<String> f, Columns cols, SimpleDateFormat[] formats) {
+        String raw = field(f, cols.debit >= 0 ? cols.debit : cols.amount);
+        int marker = marker(raw);
+        if (marker == CREDIT) return null;
+
+        double amount;
+        if (marker == DEBIT) {
+            // "250.00 Dr" says it outright, whatever the column convention
+            amount = Math.abs(parseAmount(raw));
+        } else if (cols.debit >= 0) {
+            // Separate withdrawal / deposit columns
+            amount = parseAmount(raw);
+        } else if (cols.type >= 0) {
+            // Single amount plus a Dr/Cr indicator
+            if (field(f, cols.type).trim().toLowerCase(Locale.ROOT).startsWith("cr")) return null;
+            amount = Math.abs(parseAmount(raw));
+        } else {
+            // Signed single amount: debits are negative
+            amount = -parseAmount(raw);
+        }
+        if (amount <= 0) return null;
+
+        Date date = parseDate(field(f, cols.date), formats);
+        if (date == null) return null;
+
+        String description = field(f, cols.desc).trim();
+        String category = CategorizationEngine.match(description);
+
+        Transaction t = new Transaction(amount,
+                category != null ? category : "Other",
+                description.isEmpty() ? "Statement entry" : description,
+                new Timestamp(date));
+        t.setSource("statement");
+        return t;
+    }
+
+    private static String documentId(Transaction t, Map<Long, Integer> seen) {
+        long fp = DuplicateIndex.fingerprint(t.getAmountPaise(), t.getNote(),
+                "statement", t.getTimestamp().getSeconds());
+        Integer n = seen.get(fp);
+        seen.put(fp, n == null ? 1 : n + 1);
+        return "csv-" + Long.toHexString(fp) + (n == null ? "" : "-" + (n + 1));
+    }
+
+    private static String field(List<String> f, int index) {
+        return index >= 0 && index < f.size() ? f.get(index) : "";
+    }
+
+    private static final int DEBIT = 1;
+    private static final int CREDIT = -1;
+
+    // Trailing "Dr" / "Cr" (any case, optional dot or brackets): DEBIT, CREDIT or 0
+    static int marker(String raw) {
+        int end = raw.length();
+        while (end > 0) {
+            char c = raw.charAt(end - 1);
+            if (c == '.' || c == ')' || Character.isWhitespace(c)) end--;
+            else break;
+        }
+        if (end < 2 || lower(raw.charAt(end - 1)) != 'r') return 0;
+        if (end > 2 && Character.isLetter(raw.charAt(end - 3))) return 0;
+        char first = lower(raw.charAt(end - 2));
+        return first == 'd' ? DEBIT : first == 'c' ? CREDIT : 0;
+    }
+
+    private static char lower(char c) {
+        return Character.toLowerCase(c);
+    }
+
+    // "1,23,456.78", "₹ 500", "-250.00", "250.00 Dr"; 0 when empty. Sign from a leading "-" only
+    private static double parseAmount(String raw) {
+        long paise = AmountParser.parseBarePaise(raw);
+        if (paise == AmountParser.NONE) return 0;
+        return raw.trim().startsWith("-") ? -Money.toRupees(paise) : Money.toRupees(paise);
+    }
+
+    private static Date parseDate(String raw, SimpleDateFormat[] formats) {
+        String s = raw.trim();
+        for (SimpleDateFormat format : formats) {
+            try {
+                Date d = format.parse(s);
+                if (d.getTime() >= MIN_DATE_MS) return d;
+            } catch (ParseException ignored) {}
+        }
+        return null;
+    }
+
+    static SimpleDateFormat[] dateFormats() {
+        SimpleDateFormat[] out = new SimpleDateFormat[DATE_FORMATS.length];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = new SimpleDateFormat(DATE_FORMATS[i], Locale.ENGLISH);
+            out[i].setLenient(false);
+        }
+        return out;
+    }
+
+    // ================= HEADER =================
+
+    static final class Columns {
+        int date = -1, desc = -1, debit = -1, credit = -1, amount = -1, type = -1;
+
+        static Columns from(List<String> header) {
+            Columns c = new Columns();
+            for (int i = 0; i < header.size(); i++) {
+                String h = header.get(i).trim().toLowerCase(Locale.ROOT);
+                // Type first: "Debit/Credit" is an indicator column, not an amount
+                if (c.type < 0 && matches(h, TYPE_HEADERS)) c.type = i;
+                else if (c.date < 0 && matches(h, DATE_HEADERS)) c.date = i;
+                else if (c.desc < 0 && matches(h, DESC_HEADERS)) c.desc = i;
+                else if (c.debit < 0 && matches(h, DEBIT_HEADERS)) c.debit = i;
+                else if (c.credit < 0 && matches(h, CREDIT_HEADERS)) c.credit = i;
+                else if (c.amount < 0 && matches(h, AMOUNT_HEADERS)) c.amount = i;
+            }
+            return c;
+        }
+
+        private static boolean matches(String header, String[] aliases) {
+            for (String alias : aliases) {
+                if (header.contains(alias)) return true;
+            }
+            return false;
+        }
+    }
+
+    // ================= TOKENIZER =================
+
+    /**
+     * Streaming RFC 4180 reader: quoted fields, "" escapes, embedded commas
+     * and newlines, CRLF or LF. Reuses one buffer for every field.
+     */
+    static final class CsvTokenizer {
+        private final Reader in;
+        private final StringBuilder field = new StringBuilder();
+        private int peeked = -2;
+
+        CsvTokenizer(Reader in) {
+            this.in = in;
+        }
+
+        /** Fills {@code out} with the next record; false at end of input. */
+        boolean next(List<String> out) throws IOException {
+            out.clear();
+            int c = read();
+            if (c == -1) return false;
+
+            boolean quoted = false;
+            field.setLength(0);
+
+            while (true) {
+                if (quoted) {
+                    if (c == -1) throw new IOException("Unterminated quoted field");
+                    if (c == '"') {
+                        if (peek() == '"') {
+                            read();
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    out.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\r' || c == '\n' || c == -1) {
+                    if (c == '\r' && peek() == '\n') read();
+                    out.add(field.toString());
+                    // Skip blank lines between records
+                    if (out.size() == 1 && out.get(0).isEmpty() && c != -1) {
+                        out.clear();
+                        c = read();
+                        if (c == -1) return false;
+                        continue;
+                    }
+                    return true;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        private int read() throws IOException {
+            if (peeked != -2) {
+                int c = peeked;
+                peeked = -2;
+                return c;
+            }
+            return in.read();
+        }
+
+        private int peek() throws IOException {
+            if (peeked == -2) peeked = in.read();
+            return peeked;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.finoptics;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentSnapshot;
+
+/**
+ * Reading the "timestamp" field of expense documents, which older app
+ * versions wrote as epoch millis instead of a Firestore Timestamp.
+ */
+public final class Timestamps {
+
+    /** Server-set commit time of an expense document; absent on old documents. */
+    public static final String FIELD_WRITTEN_AT = "writtenAt";
+
+    private Timestamps() {}
+
+    /** Epoch millis of the expense: Timestamp, else a legacy Long, else 0. */
+    public static long millisOf(DocumentSnapshot doc) {
+        Object ts = doc.get("timestamp");
+        if (ts instanceof Timestamp) return ((Timestamp) ts).toDate().getTime();
+        if (ts instanceof Long) return (Long) ts;
+        return 0;
+    }
+}
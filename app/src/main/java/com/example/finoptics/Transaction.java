@@ -1,13 +1,20 @@
 package com.example.finoptics;
 
 import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.ServerTimestamp;
 
 public class Transaction {
 
-    private double amount;
+    private double amount;       // rupees, kept for the backend functions
+    private long amountPaise;    // exact value; all app-side arithmetic uses this
     private String category;
     private String note;
     private Timestamp timestamp;
+    private String source;       // "sms", "notification", "sms+notification", ...
+    private String merchant;     // canonical name from MerchantRegistry, null if unknown
+    private String merchantKey;  // MerchantRegistry canonical key, stable across devices; null if unknown
+    @ServerTimestamp
+    private Timestamp writtenAt; // commit time, filled in by the server while null
 
     // Default constructor required for Firestore
     public Transaction() {}
@@ -15,6 +22,7 @@ public class Transaction {
     // Full constructor
     public Transaction(double amount, String category, String note, Timestamp timestamp) {
         this.amount = amount;
+        this.amountPaise = Money.toPaise(amount);
         this.category = category;
         this.note = note;
         this.timestamp = timestamp;
@@ -27,6 +35,16 @@ public class Transaction {
 
     public void setAmount(double amount) {
         this.amount = amount;
+        this.amountPaise = Money.toPaise(amount);
+    }
+
+    public long getAmountPaise() {
+        return amountPaise;
+    }
+
+    public void setAmountPaise(long amountPaise) {
+        this.amountPaise = amountPaise;
+        this.amount = Money.toRupees(amountPaise);
     }
 
     public String getCategory() {
@@ -53,8 +71,40 @@ public class Transaction {
         this.timestamp = timestamp;
     }
 
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    public String getMerchant() {
+        return merchant;
+    }
+
+    public void setMerchant(String merchant) {
+        this.merchant = merchant;
+    }
+
+    public String getMerchantKey() {
+        return merchantKey;
+    }
+
+    public void setMerchantKey(String merchantKey) {
+        this.merchantKey = merchantKey;
+    }
+
+    public Timestamp getWrittenAt() {
+        return writtenAt;
+    }
+
+    public void setWrittenAt(Timestamp writtenAt) {
+        this.writtenAt = writtenAt;
+    }
+
     // Optional convenience for display
     public String displayAmount() {
-        return "₹" + (int) amount;
+        return Money.format(amountPaise);
     }
 }
@@ -30,7 +30,7 @@ public class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.
 
         holder.tvNote.setText(expense.getNote());
         holder.tvCategory.setText(expense.getCategory());
-        holder.tvAmount.setText("₹" + expense.getAmount());
+        holder.tvAmount.setText(Money.format(expense.getAmountPaise()));
 
         // Dynamically set the icon based on the category string
         int iconRes = getCategoryIcon(expense.getCategory());
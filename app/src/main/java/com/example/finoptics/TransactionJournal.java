@@ -0,0 +1,239 @@
+package com.example.finoptics;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.firebase.Timestamp;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Append-only, fsync'd write-ahead journal for captured transactions.
+ *
+ * Every parsed transaction is appended here before any Firestore work, so a
+ * process death between parsing and the backend ack can no longer lose it.
+ * Entries are acknowledged once their batch commits; unacknowledged entries
+ * are replayed on the next start. The journal id doubles as the Firestore
+ * document id, which makes a replay idempotent.
+ *
+ * An id may be appended again with merged data (see {@link CorrelationIndex});
+ * the latest line wins, and an ack only clears the version it was issued for.
+ *
+ * Line format:  A \t id \t uid \t json   (append)
+ *               K \t id                  (ack)
+ */
+public final class TransactionJournal {
+
+    private static final String TAG = "FinOptics_Journal";
+    private static final String FILE_NAME = "txn_journal.log";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // Rewrite the file once this many acks have piled up behind live entries
+    private static final int COMPACT_AFTER_ACKS = 256;
+
+    private static TransactionJournal instance;
+
+    private final File file;
+    private FileOutputStream out;
+
+    // Unacknowledged entries, in append order: id -> full "A" line
+    private final Map<String, String> live = new LinkedHashMap<>();
+    private int ackedSinceCompact = 0;
+
+    public static final class Entry {
+        public final String id;
+        public final String uid;
+        public final Transaction transaction;
+        final String line; // journal line this entry was written as, null if not journaled
+
+        Entry(String id, String uid, Transaction transaction) {
+            this(id, uid, transaction, null);
+        }
+
+        Entry(String id, String uid, Transaction transaction, String line) {
+            this.id = id;
+            this.uid = uid;
+            this.transaction = transaction;
+            this.line = line;
+        }
+    }
+
+    private TransactionJournal(File file) {
+        this.file = file;
+    }
+
+    public static synchronized TransactionJournal get(Context context) {
+        if (instance == null) {
+            instance = new TransactionJournal(
+                    new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    public static String newId() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Durably records a transaction under the given id, replacing any earlier
+     * version; returns the entry to hand to the write queue.
+     */
+    public synchronized Entry append(String id, String uid, Transaction transaction) throws IOException {
+        String line = "A\t" + id + "\t" + uid + "\t" + toJson(transaction) + "\n";
+
+        FileOutputStream stream = stream();
+        stream.write(line.getBytes(UTF8));
+        stream.getFD().sync();
+
+        live.put(id, line);
+        return new Entry(id, uid, transaction, line);
+    }
+
+    /** Marks entries as committed; a newer version of the same id stays live. */
+    public synchronized void ack(List<Entry> entries) {
+        try {
+            StringBuilder acks = new StringBuilder();
+            for (Entry entry : entries) {
+                if (entry.line == null || live.get(entry.id) != entry.line) continue;
+                live.remove(entry.id);
+                acks.append("K\t").append(entry.id).append('\n');
+            }
+            ackedSinceCompact += entries.size();
+
+            if (live.isEmpty()) {
+                truncate();
+            } else if (ackedSinceCompact >= COMPACT_AFTER_ACKS) {
+                compact();
+            } else if (acks.length() > 0) {
+                // No fsync: a lost ack only causes an idempotent re-upload
+                stream().write(acks.toString().getBytes(UTF8));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Journal ack failed", e);
+        }
+    }
+
+    /** Loads every unacknowledged entry; call once per process before appending. */
+    public synchronized List<Entry> replay() {
+        List<Entry> pending = new ArrayList<>();
+        live.clear();
+        if (!file.exists()) return pending;
+
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), UTF8))) {
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 4);
+                try {
+                    if (parts.length == 4 && "A".equals(parts[0])) {
+                        String full = line + "\n";
+                        // A later version of the same id (a merge) replaces the earlier one
+                        entries.put(parts[1], new Entry(parts[1], parts[2], fromJson(parts[3]), full));
+                        live.put(parts[1], full);
+                    } else if (parts.length == 2 && "K".equals(parts[0])) {
+                        entries.remove(parts[1]);
+                        live.remove(parts[1]);
+                    }
+                } catch (Exception e) {
+                    // Torn tail write from a crash: skip the partial line
+                    Log.w(TAG, "Skipping corrupt journal line", e);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Journal replay failed", e);
+        }
+
+        pending.addAll(entries.values());
+        Log.d(TAG, "Replaying " + pending.size() + " unacknowledged txn(s)");
+
+        // Start from a clean file so a torn tail never merges with the next append
+        try {
+            compact();
+        } catch (IOException e) {
+            Log.e(TAG, "Journal compaction failed", e);
+        }
+        return pending;
+    }
+
+    // ================= FILE MAINTENANCE =================
+
+    private FileOutputStream stream() throws IOException {
+        if (out == null) out = new FileOutputStream(file, true);
+        return out;
+    }
+
+    private void truncate() throws IOException {
+        stream().getChannel().truncate(0);
+        ackedSinceCompact = 0;
+    }
+
+    // Rewrite only the live entries, then atomically swap the file in
+    private void compact() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream tmpOut = new FileOutputStream(tmp, false)) {
+            for (String line : live.values()) tmpOut.write(line.getBytes(UTF8));
+            tmpOut.getFD().sync();
+        }
+
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        if (!tmp.renameTo(file)) throw new IOException("Journal compaction rename failed");
+        ackedSinceCompact = 0;
+    }
+
+    // ================= SERIALIZATION =================
+
+    private static String toJson(Transaction t) {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("amount", t.getAmount());
+            json.put("amountPaise", t.getAmountPaise());
+            json.put("category", t.getCategory());
+            json.put("note", t.getNote());
+            if (t.getSource() != null) json.put("source", t.getSource());
+            if (t.getMerchant() != null) json.put("merchant", t.getMerchant());
+            if (t.getMerchantKey() != null) json.put("merchantKey", t.getMerchantKey());
+            if (t.getTimestamp() != null) {
+                json.put("seconds", t.getTimestamp().getSeconds());
+                json.put("nanos", t.getTimestamp().getNanoseconds());
+            }
+            return json.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Transaction fromJson(String raw) throws Exception {
+        JSONObject json = new JSONObject(raw);
+        Timestamp ts = json.has("seconds")
+                ? new Timestamp(json.optLong("seconds", 0), (int) json.optLong("nanos", 0))
+                : Timestamp.now();
+        Transaction t = new Transaction(
+                json.optDouble("amount", 0),
+                json.optString("category", "Other"),
+                json.optString("note", ""),
+                ts);
+        if (json.has("amountPaise")) t.setAmountPaise(json.optLong("amountPaise", 0));
+        if (json.has("source")) t.setSource(json.optString("source", null));
+        if (json.has("merchant")) t.setMerchant(json.optString("merchant", null));
+        if (json.has("merchantKey")) t.setMerchantKey(json.optString("merchantKey", null));
+        return t;
+    }
+}
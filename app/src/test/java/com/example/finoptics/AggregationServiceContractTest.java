@@ -0,0 +1,107 @@
+package com.example.finoptics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * What every {@link AggregationService} must answer, whatever computes it:
+ * {@code from} inclusive, {@code to} exclusive, one user only, and a
+ * category filter that null switches off. Each implementation subclasses
+ * this with a way to seed expenses, so the in-memory fake and a
+ * Firestore-backed run (against the emulator) are held to the same rules.
+ */
+public abstract class AggregationServiceContractTest {
+
+    protected static final String UID = "user-a";
+    protected static final String OTHER_UID = "user-b";
+
+    // 2024-03-01 00:00 UTC; offsets below are whole days
+    protected static final long T0 = 1_709_251_200_000L;
+    protected static final long DAY = 24 * 60 * 60 * 1000L;
+
+    /** A fresh service with no expenses. */
+    protected abstract AggregationService newService();
+
+    /** Stores one expense where {@link #newService()}'s service reads from. */
+    protected abstract void seed(String uid, long paise, String category, long millis);
+
+    private AggregationService service;
+
+    @Before
+    public void setUpService() {
+        service = newService();
+        seed(UID, 12_000, "Food", T0);
+        seed(UID, 45_050, "Transport", T0 + DAY);
+        seed(UID, 99, "Food", T0 + 2 * DAY);
+        seed(UID, 150_000, "Bills", T0 + 31 * DAY);
+        seed(OTHER_UID, 70_000, "Food", T0 + DAY);
+    }
+
+    private AggregationService.Result aggregate(long from, long to, String category)
+            throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        AggregationService.Result[] out = new AggregationService.Result[1];
+        service.aggregate(UID, from, to, category, result -> {
+            out[0] = result;
+            done.countDown();
+        });
+        assertTrue("no answer", done.await(10, TimeUnit.SECONDS));
+        assertNotNull("aggregation failed", out[0]);
+        return out[0];
+    }
+
+    private static void assertTotals(long paise, long count, AggregationService.Result r) {
+        assertEquals(paise, r.sumPaise);
+        assertEquals(count, r.count);
+    }
+
+    @Test
+    public void sumsAndCountsARange() throws Exception {
+        assertTotals(12_000 + 45_050 + 99, 3, aggregate(T0, T0 + 30 * DAY, null));
+    }
+
+    @Test
+    public void fromIsInclusiveToIsExclusive() throws Exception {
+        assertTotals(12_000, 1, aggregate(T0, T0 + DAY, null));
+        assertTotals(45_050, 1, aggregate(T0 + DAY, T0 + 2 * DAY, null));
+        assertTotals(0, 0, aggregate(T0 + 1, T0 + DAY, null));
+    }
+
+    @Test
+    public void openEndedRangeReachesTheLatest() throws Exception {
+        assertTotals(12_000 + 45_050 + 99 + 150_000, 4, aggregate(T0, Long.MAX_VALUE, null));
+    }
+
+    @Test
+    public void categoryFilterKeepsOnlyThatCategory() throws Exception {
+        assertTotals(12_000 + 99, 2, aggregate(T0, T0 + 30 * DAY, "Food"));
+        assertTotals(45_050, 1, aggregate(T0, T0 + 30 * DAY, "Transport"));
+    }
+
+    @Test
+    public void categoryAndRangeCombine() throws Exception {
+        assertTotals(99, 1, aggregate(T0 + DAY, T0 + 30 * DAY, "Food"));
+        assertTotals(0, 0, aggregate(T0, T0 + 30 * DAY, "Bills"));
+    }
+
+    @Test
+    public void unknownCategoryIsEmpty() throws Exception {
+        assertTotals(0, 0, aggregate(T0, Long.MAX_VALUE, "Entertainment"));
+    }
+
+    @Test
+    public void emptyRangeIsZeroNotAFailure() throws Exception {
+        assertTotals(0, 0, aggregate(T0 - 10 * DAY, T0, null));
+        assertTotals(0, 0, aggregate(T0 + DAY, T0 + DAY, null));
+    }
+
+    @Test
+    public void otherUsersExpensesAreNeverCounted() throws Exception {
+        assertTotals(45_050, 1, aggregate(T0 + DAY, T0 + 2 * DAY, null));
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.finoptics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * AmountParser over a table of real-world message shapes: each row is the
+ * input and the expected paise (NONE when no amount should be read).
+ */
+public class AmountParserTest {
+
+    private static final long NONE = AmountParser.NONE;
+
+    // input, parsePaise
+    private static final Object[][] PREFIXED = {
+            {"Rs.1,00,000.50 debited from A/c", 10_000_050L},
+            {"INR 12,34,567 spent", 123_456_700L},
+            {"Rs 100,000 sent", 10_000_000L},
+            {"₹ 99.9 paid to Chai Point", 9_990L},
+            {"₹250", 25_000L},
+            {"Rs500 at SWIGGY", 50_000L},
+            {"rs. 75.25", 7_525L},
+            {"INR: 1200", 120_000L},
+            {"Paid Rs.500. Thanks", 50_000L},
+            {"Rs 300", 30_000L},
+            {"Rs 1,2,3", 100L},
+            {"Rs 10,5 split", 1_000L},
+            {"Rs.-500 reversed", NONE},
+            {"Delivered in 2 hours", NONE},
+            {"2 hours ago Rs 40", 4_000L},
+            {"linr 500", NONE},
+            {"Rsvp 500", NONE},
+            {"Rs 1234567890123456", NONE},
+            {"no amount here", NONE},
+            {"", NONE},
+    };
+
+    // input, parseBarePaise
+    private static final Object[][] BARE = {
+            {"200 for fried rice", 20_000L},
+            {"lunch 1,50,000.5", 15_000_050L},
+            {"Rs.-500", 50_000L},
+            {"250.00 Dr", 25_000L},
+            {"5.", 500L},
+            {"coffee", NONE},
+            {"", NONE},
+    };
+
+    @Test
+    public void prefixedAmounts() {
+        for (Object[] row : PREFIXED) {
+            assertEquals((String) row[0], (long) (Long) row[1], AmountParser.parsePaise((String) row[0]));
+        }
+    }
+
+    @Test
+    public void bareAmounts() {
+        for (Object[] row : BARE) {
+            assertEquals((String) row[0], (long) (Long) row[1], AmountParser.parseBarePaise((String) row[0]));
+        }
+    }
+
+    @Test
+    public void nullHasNoAmount() {
+        assertEquals(NONE, AmountParser.parsePaise(null));
+        assertEquals(NONE, AmountParser.parseBarePaise(null));
+    }
+}
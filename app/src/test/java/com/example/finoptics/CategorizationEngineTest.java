@@ -0,0 +1,49 @@
+package com.example.finoptics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * CategorizationEngine.process over the built-in dictionary: which layer
+ * answers, with what confidence, and null when none does.
+ */
+public class CategorizationEngineTest {
+
+    @Test
+    public void vendorLayerWinsOverKeywordCluster() {
+        CategorizationEngine.ParseResult r = CategorizationEngine.process("lunch after uber 250");
+        assertEquals("Transport", r.category);
+        assertEquals(CategorizationEngine.SOURCE_VENDOR, r.source);
+        assertTrue(r.isConfident());
+    }
+
+    @Test
+    public void keywordClusterAnswersWithoutAVendor() {
+        CategorizationEngine.ParseResult r = CategorizationEngine.process("Petrol 500");
+        assertEquals("Transport", r.category);
+        assertEquals(CategorizationEngine.SOURCE_KEYWORD, r.source);
+        assertEquals(500.0, r.amount, 0.001);
+    }
+
+    @Test
+    public void vendorNameInsideAWordIsNotAMatch() {
+        CategorizationEngine.ParseResult r = CategorizationEngine.process("chocolate 80");
+        assertNull(r.category);
+        assertEquals(CategorizationEngine.SOURCE_NONE, r.source);
+        assertFalse(r.isConfident());
+    }
+
+    @Test
+    public void noMatchLeavesCategoryNull() {
+        assertNull(CategorizationEngine.process("transfer to savings 1000").category);
+        assertNull(CategorizationEngine.match("transfer to savings"));
+    }
+
+    @Test
+    public void normalizeCategoryMapsFreeFormLabels() {
+        assertEquals("Food", CategorizationEngine.normalizeCategory(" FOOD "));
+        assertEquals("Other", CategorizationEngine.normalizeCategory("groceries"));
+        assertEquals("Other", CategorizationEngine.normalizeCategory(null));
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.finoptics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * CorrelationIndex pairs an SMS with the app notification for the same
+ * payment: other source, exact paise, merchants that don't disagree.
+ */
+public class CorrelationIndexTest {
+
+    private static final String UID = "u1";
+    private static final long NOW = 1_700_000_000_000L;
+
+    private static Transaction txn(double amount, String merchant, String source) {
+        Transaction t = new Transaction(amount, "Other", merchant, null);
+        t.setSource(source);
+        return t;
+    }
+
+    @Test
+    public void smsAndNotificationForSamePaymentPair() {
+        CorrelationIndex index = new CorrelationIndex();
+        index.record("a", UID, txn(249.50, "zomato@hdfcbank", "sms"), NOW);
+
+        CorrelationIndex.Record r =
+                index.findCounterpart(UID, txn(249.50, "Zomato", "notification"), NOW + 30_000);
+        assertNotNull(r);
+        assertEquals("a", r.id);
+    }
+
+    @Test
+    public void differentPaiseDoNotPair() {
+        CorrelationIndex index = new CorrelationIndex();
+        index.record("a", UID, txn(249.50, "Zomato", "sms"), NOW);
+
+        assertNull(index.findCounterpart(UID, txn(249.00, "Zomato", "notification"), NOW));
+    }
+
+    @Test
+    public void contradictoryMerchantsDoNotPair() {
+        CorrelationIndex index = new CorrelationIndex();
+        index.record("a", UID, txn(120, "Chai Point", "sms"), NOW);
+
+        assertNull(index.findCounterpart(UID, txn(120, "Uber", "notification"), NOW));
+    }
+
+    @Test
+    public void unknownOrPhoneVpaMerchantIsCompatible() {
+        assertTrue(CorrelationIndex.compatible(
+                txn(120, "Unknown", "sms"), txn(120, "Chai Point", "notification")));
+        assertTrue(CorrelationIndex.compatible(
+                txn(120, "9876543210@ybl", "sms"), txn(120, "Ramesh Kumar", "notification")));
+        assertFalse(CorrelationIndex.compatible(
+                txn(120, "swiggy@icici", "sms"), txn(120, "Zomato", "notification")));
+    }
+
+    @Test
+    public void sameSourceRepeatIsNeverMerged() {
+        CorrelationIndex index = new CorrelationIndex();
+        index.record("a", UID, txn(120, "Chai Point", "sms"), NOW);
+
+        assertNull(index.findCounterpart(UID, txn(120, "Chai Point", "sms"), NOW + 1000));
+    }
+
+    @Test
+    public void outsideTheWindowOrOtherUserDoesNotPair() {
+        CorrelationIndex index = new CorrelationIndex();
+        index.record("a", UID, txn(120, "Chai Point", "sms"), NOW);
+
+        assertNull(index.findCounterpart("u2", txn(120, "Chai Point", "notification"), NOW));
+        assertNull(index.findCounterpart(UID, txn(120, "Chai Point", "notification"),
+                NOW + 4 * 60 * 1000L));
+    }
+
+    @Test
+    public void mergeKeepsTheBetterMerchantAndBothSources() {
+        Transaction merged = CorrelationIndex.merge(
+                txn(120, "chaipoint@okaxis", "sms"), txn(120, "Chai Point", "notification"));
+        assertEquals("Chai Point", merged.getNote());
+        assertEquals(12_000, merged.getAmountPaise());
+        assertEquals("sms+notification", merged.getSource());
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.finoptics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * DuplicateIndex drops a message only when its identity repeats; same amount
+ * and merchant from a different message is reported SIMILAR and kept.
+ */
+public class DuplicateIndexTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("dedup", ".bin");
+        file.delete();
+        file.deleteOnExit();
+    }
+
+    @Test
+    public void sameMessageTwiceIsDuplicate() {
+        DuplicateIndex index = new DuplicateIndex(file);
+        long now = System.currentTimeMillis();
+        long key = DuplicateIndex.smsKey("VM-HDFCBK", now, "Rs 120 paid to Chai Point");
+
+        assertEquals(DuplicateIndex.NEW, index.checkAndRecord(key, 120, "Chai Point", "sms", now));
+        assertEquals(DuplicateIndex.DUPLICATE,
+                index.checkAndRecord(key, 120, "Chai Point", "sms", now + 1000));
+    }
+
+    @Test
+    public void repeatPaymentFromANewMessageIsOnlySimilar() {
+        DuplicateIndex index = new DuplicateIndex(file);
+        long now = System.currentTimeMillis();
+        String body = "Rs 120 paid to Chai Point";
+
+        long first = DuplicateIndex.smsKey("VM-HDFCBK", now, body);
+        long second = DuplicateIndex.smsKey("VM-HDFCBK", now + 60_000, body);
+
+        assertEquals(DuplicateIndex.NEW, index.checkAndRecord(first, 120, "Chai Point", "sms", now));
+        assertEquals(DuplicateIndex.SIMILAR,
+                index.checkAndRecord(second, 120, "chai point.", "sms", now + 60_000));
+    }
+
+    @Test
+    public void differentSourceOrAmountIsNew() {
+        DuplicateIndex index = new DuplicateIndex(file);
+        long now = System.currentTimeMillis();
+
+        index.checkAndRecord(DuplicateIndex.textKey("parser", "a"), 120, "Zomato", "sms", now);
+        assertEquals(DuplicateIndex.NEW, index.checkAndRecord(
+                DuplicateIndex.notificationKey("0|com.phonepe.app|1", "Paid ₹120 to Zomato"), 120, "Zomato",
+                "notification", now));
+        assertEquals(DuplicateIndex.NEW, index.checkAndRecord(
+                DuplicateIndex.textKey("parser", "b"), 120.5, "Zomato", "sms", now));
+    }
+
+    @Test
+    public void identityKeysSeparateTheirFields() {
+        assertNotEquals(DuplicateIndex.smsKey("ab", 1, "c"), DuplicateIndex.smsKey("a", 1, "bc"));
+        assertNotEquals(DuplicateIndex.notificationKey("k", "a"), DuplicateIndex.notificationKey("k", "b"));
+        assertNotEquals(DuplicateIndex.textKey("sms", "x"), DuplicateIndex.textKey("parser", "x"));
+    }
+
+    @Test
+    public void repostedNotificationIsTheSameMessage() {
+        DuplicateIndex index = new DuplicateIndex(file);
+        long now = System.currentTimeMillis();
+        String key = "0|com.google.android.apps.nbu.paisa.user|42|null|10234";
+
+        // Same key and text, posted again a few seconds later
+        assertEquals(DuplicateIndex.NEW, index.checkAndRecord(
+                DuplicateIndex.notificationKey(key, "Paid ₹120 to Chai Point"),
+                120, "Chai Point", "notification", now));
+        assertEquals(DuplicateIndex.DUPLICATE, index.checkAndRecord(
+                DuplicateIndex.notificationKey(key, "Paid ₹120 to Chai Point"),
+                120, "Chai Point", "notification", now + 5_000));
+    }
+
+    @Test
+    public void recordsSurviveAReload() {
+        long now = System.currentTimeMillis();
+        long key = DuplicateIndex.notificationKey("0|com.phonepe.app|7|null|10123", "Paid ₹499 to Swiggy");
+        new DuplicateIndex(file).checkAndRecord(key, 499, "Swiggy", "notification", now);
+
+        DuplicateIndex reloaded = new DuplicateIndex(file);
+        assertTrue(reloaded.contains(key));
+        assertEquals(DuplicateIndex.DUPLICATE,
+                reloaded.checkAndRecord(key, 499, "Swiggy", "notification", now));
+    }
+}
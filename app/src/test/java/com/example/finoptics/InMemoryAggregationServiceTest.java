@@ -0,0 +1,31 @@
+package com.example.finoptics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/** The in-memory fake held to the {@link AggregationServiceContractTest} contract. */
+public class InMemoryAggregationServiceTest extends AggregationServiceContractTest {
+
+    private InMemoryAggregationService memory;
+
+    @Override
+    protected AggregationService newService() {
+        memory = new InMemoryAggregationService();
+        return memory;
+    }
+
+    @Override
+    protected void seed(String uid, long paise, String category, long millis) {
+        memory.add(uid, paise, category, millis);
+    }
+
+    @Test
+    public void clearForgetsEverything() {
+        memory.clear();
+        AggregationService.Result[] out = new AggregationService.Result[1];
+        memory.aggregate(UID, 0, Long.MAX_VALUE, null, r -> out[0] = r);
+        assertEquals(0, out[0].sumPaise);
+        assertEquals(0, out[0].count);
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.finoptics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * KeywordAutomaton: whole-word matching, layer precedence and the
+ * no-match contract the categorization layers rely on.
+ */
+public class KeywordAutomatonTest {
+
+    private static KeywordAutomaton automaton() {
+        return new KeywordAutomaton.Builder()
+                .add("ola", "Transport", KeywordAutomaton.LAYER_VENDOR)
+                .add("zomato", "Food", KeywordAutomaton.LAYER_VENDOR)
+                .addCluster("Food", new String[]{"lunch", "tea"})
+                .addCluster("Bills", new String[]{"rent"})
+                .add("chai point", "Food", KeywordAutomaton.LAYER_LEARNED)
+                .add("rental", "Shopping", KeywordAutomaton.LAYER_LEARNED)
+                .build();
+    }
+
+    // ---- Word boundaries ----
+
+    @Test
+    public void keywordInsideAWordDoesNotMatch() {
+        KeywordAutomaton a = automaton();
+        assertNull(a.bestMatch("chocolate cake"));
+        assertNull(a.bestMatch("steam iron"));      // "tea" inside "steam"
+        assertNull(a.bestMatch("parental leave"));  // "rent" and "rental" inside "parental"
+    }
+
+    @Test
+    public void keywordMatchesAtEdgesAndNextToPunctuation() {
+        KeywordAutomaton a = automaton();
+        assertEquals("Transport", a.bestMatch("ola"));
+        assertEquals("Transport", a.bestMatch("paid ola, 250"));
+        assertEquals("Food", a.bestMatch("250 for lunch."));
+        assertEquals("Transport", a.bestMatch("OLA ride"));
+    }
+
+    @Test
+    public void multiWordKeywordMatchesAsAPhrase() {
+        KeywordAutomaton a = automaton();
+        assertEquals("Food", a.bestMatch("120 at chai point"));
+        assertNull(a.bestMatch("120 at chai pointe"));
+    }
+
+    @Test
+    public void longerKeywordWinsOverItsPrefixOnlyWhenWhole() {
+        KeywordAutomaton a = automaton();
+        // "rental" is a learned keyword; "rent" inside it is not a whole word
+        assertEquals("Shopping", a.bestMatch("bike rental"));
+        assertEquals("Bills", a.bestMatch("house rent"));
+    }
+
+    // ---- Precedence ----
+
+    @Test
+    public void vendorBeatsKeywordBeatsLearnedRegardlessOfPosition() {
+        KeywordAutomaton a = automaton();
+        assertEquals("Transport", a.bestMatch("lunch then ola home"));
+        // rent (cluster) beats chai point (learned) even though it comes later
+        assertEquals("Bills", a.bestMatch("chai point rent split"));
+        assertEquals(KeywordAutomaton.LAYER_CLUSTER,
+                a.layerOf(a.bestMatchId("chai point rent split")));
+        // Learned keywords still answer when nothing higher matches
+        assertEquals(KeywordAutomaton.LAYER_LEARNED, a.layerOf(a.bestMatchId("chai point 120")));
+    }
+
+    @Test
+    public void sameLayerTakesTheEarliestHit() {
+        KeywordAutomaton a = automaton();
+        assertEquals("Food", a.bestMatch("tea and rent"));
+        assertEquals("Bills", a.bestMatch("rent and tea"));
+    }
+
+    @Test
+    public void duplicateKeywordKeepsItsHighestPriorityLayer() {
+        KeywordAutomaton a = new KeywordAutomaton.Builder()
+                .add("uber", "Food", KeywordAutomaton.LAYER_LEARNED)
+                .add("uber", "Transport", KeywordAutomaton.LAYER_VENDOR)
+                .add("uber", "Shopping", KeywordAutomaton.LAYER_CLUSTER)
+                .build();
+        assertEquals(1, a.size());
+        assertEquals("Transport", a.bestMatch("uber"));
+    }
+
+    // ---- No match ----
+
+    @Test
+    public void noMatchIsNullAndMinusOne() {
+        KeywordAutomaton a = automaton();
+        assertNull(a.bestMatch("transfer to savings"));
+        assertNull(a.bestMatch(""));
+        assertEquals(-1, a.bestMatchId("transfer to savings"));
+        assertNull(new KeywordAutomaton.Builder().build().bestMatch("anything at all"));
+    }
+
+    @Test
+    public void scanReportsEveryWholeWordHit() {
+        final List<String> hits = new ArrayList<>();
+        automaton().scan("tea, lunch and chocolate at zomato", new KeywordAutomaton.MatchListener() {
+            @Override
+            public void onMatch(int start, int end, String category, int layer) {
+                hits.add(start + "-" + end + ":" + category);
+            }
+        });
+
+        assertEquals(3, hits.size());
+        assertEquals("0-3:Food", hits.get(0));
+        assertEquals("5-10:Food", hits.get(1));
+        assertEquals("28-34:Food", hits.get(2));
+    }
+}
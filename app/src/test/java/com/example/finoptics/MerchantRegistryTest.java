@@ -0,0 +1,81 @@
+package com.example.finoptics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * MerchantRegistry stamps a device-independent key on expenses: spellings of
+ * one merchant share it, whichever order a registry met them in.
+ */
+public class MerchantRegistryTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("merchants", ".tsv");
+        file.delete();
+        file.deleteOnExit();
+    }
+
+    private static Transaction tagged(MerchantRegistry registry, String raw) {
+        Transaction t = new Transaction(100, "Other", raw, null);
+        registry.tag(t, raw);
+        return t;
+    }
+
+    @Test
+    public void spellingsOfOneMerchantShareTheKey() {
+        MerchantRegistry registry = new MerchantRegistry(file);
+        assertEquals("zomato", tagged(registry, "Zomato Ltd.").getMerchantKey());
+        assertEquals("zomato", tagged(registry, "zomato.payu@axis").getMerchantKey());
+        assertEquals("Zomato", tagged(registry, "zomato order").getMerchant());
+    }
+
+    @Test
+    public void keyDoesNotDependOnRegistrationOrder() throws IOException {
+        MerchantRegistry first = new MerchantRegistry(file);
+        tagged(first, "Swiggy");
+        String key = tagged(first, "Chai Point").getMerchantKey();
+
+        File other = File.createTempFile("merchants", ".tsv");
+        other.delete();
+        other.deleteOnExit();
+        MerchantRegistry second = new MerchantRegistry(other);
+        assertEquals(key, tagged(second, "CHAI POINT PVT LTD").getMerchantKey());
+    }
+
+    @Test
+    public void aliasResolvesToTheCanonicalKey() {
+        MerchantRegistry registry = new MerchantRegistry(file);
+        int id = registry.idFor("Zomato");
+        registry.alias("ZMT Foods", id);
+        assertEquals("zomato", tagged(registry, "zmt foods").getMerchantKey());
+
+        MerchantRegistry reloaded = new MerchantRegistry(file);
+        assertEquals("zomato", tagged(reloaded, "ZMT Foods").getMerchantKey());
+    }
+
+    @Test
+    public void unknownMerchantHasNoKey() {
+        MerchantRegistry registry = new MerchantRegistry(file);
+        Transaction t = tagged(registry, MerchantTokenizer.UNKNOWN);
+        assertNull(t.getMerchantKey());
+        assertNull(t.getMerchant());
+    }
+
+    @Test
+    public void statementNarrationYieldsOnlyThePayee() {
+        MerchantRegistry registry = new MerchantRegistry(file);
+        String narration = "UPI/DR/410298/ZOMATO/YESB/zomato@yesb";
+        assertEquals("zomato",
+                tagged(registry, MerchantTokenizer.extract(narration)).getMerchantKey());
+        assertNull(tagged(registry, MerchantTokenizer.extract("NEFT DR-HDFC0001-ACME")).getMerchantKey());
+        assertEquals(1, registry.size());
+    }
+}
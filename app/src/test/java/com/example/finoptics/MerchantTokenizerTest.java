@@ -0,0 +1,70 @@
+package com.example.finoptics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * MerchantTokenizer extraction, one anchor at a time: "paid to", " to ",
+ * " at ", a VPA and "Info:", plus the cases that must not match.
+ */
+public class MerchantTokenizerTest {
+
+    @Test
+    public void paidToAnchor() {
+        assertEquals("Netflix", MerchantTokenizer.extract("Paid Rs. 99 to Netflix. Ref no 1234"));
+        assertEquals("Chai point", MerchantTokenizer.extract("Rs 120 paid to Chai Point on 12-03-2024"));
+    }
+
+    @Test
+    public void paidToInsidePrepaidIsNotAnAnchor() {
+        assertEquals("Airtel", MerchantTokenizer.extract(
+                "Your prepaid top-up Rs 199 paid to Airtel via UPI"));
+        assertEquals("Airtel", MerchantTokenizer.extract(
+                "Prepaid to mobile recharge: Rs 199 paid to Airtel"));
+    }
+
+    @Test
+    public void toAnchorEndsAtViaOnOrFullStop() {
+        assertEquals("Zomato", MerchantTokenizer.extract(
+                "Rs.250.00 debited from A/c XX1234 to zomato via UPI. Ref 12345"));
+        assertEquals("Ramesh kumar", MerchantTokenizer.extract("Rs 1,200 sent to Ramesh Kumar via PhonePe"));
+        assertEquals("Swiggy", MerchantTokenizer.extract("Rs 300 sent to Swiggy on 01-02-2024"));
+    }
+
+    @Test
+    public void atAnchor() {
+        assertEquals("Dominos pizza", MerchantTokenizer.extract("INR 560.00 spent at Dominos Pizza on your card."));
+        assertEquals("Uber india", MerchantTokenizer.extract("Your a/c is debited by Rs.75 at UBER INDIA on 01-Feb"));
+    }
+
+    @Test
+    public void vpaWhenNoWordAnchor() {
+        assertEquals("Swiggy@icici", MerchantTokenizer.extract("Rs 349 debited for UPI txn swiggy@icici. Ref 998"));
+        assertEquals("Chai.point-1@okaxis", MerchantTokenizer.extract("UPI debit chai.point-1@okaxis"));
+    }
+
+    @Test
+    public void infoAnchorIsTheLastResort() {
+        assertEquals("Upi/p2m/blinkit",
+                MerchantTokenizer.extract("Acct XX12 debited INR 410.00 Info: UPI/P2M/BLINKIT"));
+    }
+
+    @Test
+    public void messageEndingAfterAnchorIsUnknown() {
+        assertEquals(MerchantTokenizer.UNKNOWN, MerchantTokenizer.extract("Rs 500 paid to"));
+        assertEquals(MerchantTokenizer.UNKNOWN, MerchantTokenizer.extract("Rs 500 paid to "));
+        assertEquals(MerchantTokenizer.UNKNOWN, MerchantTokenizer.extract("Balance is Rs 500"));
+        assertEquals(MerchantTokenizer.UNKNOWN, MerchantTokenizer.extract(null));
+    }
+
+    @Test
+    public void spanIsReportedAsOffsets() {
+        String message = "Paid Rs. 99 to Netflix. Ref no 1234";
+        long span = MerchantTokenizer.findSpan(message);
+
+        assertEquals("Netflix", message.substring(
+                MerchantTokenizer.spanStart(span), MerchantTokenizer.spanEnd(span)));
+        assertEquals(MerchantTokenizer.NO_SPAN, MerchantTokenizer.findSpan("Balance is Rs 500"));
+    }
+}
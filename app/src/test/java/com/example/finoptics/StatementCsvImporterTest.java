@@ -0,0 +1,71 @@
+package com.example.finoptics;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * StatementCsvImporter row mapping: which rows are debits, at what amount,
+ * across the three statement layouts.
+ */
+public class StatementCsvImporterTest {
+
+    private static final SimpleDateFormat[] FORMATS = StatementCsvImporter.dateFormats();
+
+    private static Transaction row(String header, String line) throws Exception {
+        StatementCsvImporter.CsvTokenizer csv =
+                new StatementCsvImporter.CsvTokenizer(new StringReader(header + "\n" + line + "\n"));
+        List<String> fields = new ArrayList<>();
+        csv.next(fields);
+        StatementCsvImporter.Columns cols = StatementCsvImporter.Columns.from(fields);
+        csv.next(fields);
+        return StatementCsvImporter.toTransaction(fields, cols, FORMATS);
+    }
+
+    @Test
+    public void drSuffixIsADebitInASignedAmountColumn() throws Exception {
+        Transaction t = row("Date,Narration,Amount", "05/03/2024,UPI-SWIGGY,250.00 Dr");
+        assertNotNull(t);
+        assertEquals(25_000, t.getAmountPaise());
+    }
+
+    @Test
+    public void crSuffixIsSkipped() throws Exception {
+        assertNull(row("Date,Narration,Amount", "05/03/2024,SALARY,\"50,000.00 Cr\""));
+        assertNull(row("Date,Narration,Amount", "05/03/2024,REFUND,120.00 CR."));
+    }
+
+    @Test
+    public void signedAmountWithoutSuffixKeepsItsConvention() throws Exception {
+        assertEquals(25_000, row("Date,Narration,Amount", "05/03/2024,UPI-SWIGGY,-250.00")
+                .getAmountPaise());
+        assertNull(row("Date,Narration,Amount", "05/03/2024,SALARY,50000.00"));
+    }
+
+    @Test
+    public void withdrawalColumnAndTypeColumnLayouts() throws Exception {
+        assertEquals(12_345_678L, row("Txn Date,Description,Withdrawal,Deposit",
+                "2024-03-05,RENT,\"1,23,456.78\",").getAmountPaise());
+        assertNull(row("Txn Date,Description,Withdrawal,Deposit", "2024-03-05,SALARY,,5000"));
+        assertNull(row("Date,Particulars,Amount,Dr/Cr", "05-Mar-2024,SALARY,5000,CR"));
+        assertEquals(50_000, row("Date,Particulars,Amount,Dr/Cr", "05-Mar-2024,ZOMATO,500,DR")
+                .getAmountPaise());
+    }
+
+    @Test
+    public void markerReadsOnlyAWholeTrailingWord() {
+        for (String debit : Arrays.asList("250 Dr", "250Dr", "250 DR.", "250 (dr)")) {
+            assertEquals(debit, 1, StatementCsvImporter.marker(debit));
+        }
+        assertEquals(-1, StatementCsvImporter.marker("250 Cr"));
+        assertEquals(0, StatementCsvImporter.marker("250"));
+        assertEquals(0, StatementCsvImporter.marker("Transfer"));
+        assertEquals(0, StatementCsvImporter.marker(""));
+    }
+}